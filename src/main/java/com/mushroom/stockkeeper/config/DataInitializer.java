@@ -10,11 +10,14 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 @Configuration
 public class DataInitializer {
 
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(DataInitializer.class);
+
     @Bean
     CommandLineRunner init(UserRepository userRepo,
             ProductRepository productRepo,
             UOMRepository uomRepo,
             CustomerRepository customerRepo,
+            InventoryUnitRepository unitRepo,
             com.mushroom.stockkeeper.service.SettingsService settingsService,
             PasswordEncoder encoder) {
         return args -> {
@@ -146,6 +149,12 @@ public class DataInitializer {
                 }
             }
 
+            // Units created before the seq column existed: derive it from the UUID suffix
+            int backfilled = unitRepo.backfillUnitSequences();
+            if (backfilled > 0) {
+                logger.info("Backfilled sequence numbers for {} inventory units", backfilled);
+            }
+
             // Global Settings
             String fallbackAddress = settingsService.getCompanyName() != null ? "" : "123 Farm Lane, Village Bhatpal, Canacona, Goa 403702";
             try {
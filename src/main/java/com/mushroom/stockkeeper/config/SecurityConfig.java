@@ -2,9 +2,14 @@ package com.mushroom.stockkeeper.config;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
@@ -15,7 +20,41 @@ import org.springframework.security.web.util.matcher.AntPathRequestMatcher;
 @EnableMethodSecurity
 public class SecurityConfig {
 
+    private static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+
+    // Scripts POST harvest CSVs (text/csv) to /batches/import with HTTP Basic
+    // credentials and no session, so they have no CSRF token to send. Only
+    // requests with both Basic credentials and a text/csv body use this chain.
+    // Browsers resend cached Basic credentials on cross-site requests, but a
+    // cross-site form can only post urlencoded, multipart or text/plain bodies;
+    // text/csv needs a CORS preflight, which this app never answers. The upload
+    // form (multipart) therefore keeps its CSRF check whatever headers it carries.
+    @Bean
+    @Order(1)
+    public SecurityFilterChain importApiFilterChain(HttpSecurity http) throws Exception {
+        AntPathRequestMatcher importPath = new AntPathRequestMatcher("/batches/import", "POST");
+        http
+                .securityMatcher(request -> importPath.matches(request)
+                        && String.valueOf(request.getHeader("Authorization")).startsWith("Basic ")
+                        && isCsv(request.getContentType()))
+                .authorizeHttpRequests(auth -> auth.anyRequest().authenticated())
+                .httpBasic(Customizer.withDefaults())
+                .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                .csrf(csrf -> csrf.disable());
+
+        return http.build();
+    }
+
+    private static boolean isCsv(String contentType) {
+        try {
+            return contentType != null && MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+    }
+
     @Bean
+    @Order(2)
     public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
         http
                 .authorizeHttpRequests(auth -> auth
@@ -18,9 +18,12 @@ import java.util.stream.Collectors;
 public class AdminController {
 
     private final AppSettingRepository settingRepository;
+    private final com.mushroom.stockkeeper.service.QrCodeService qrCodeService;
 
-    public AdminController(AppSettingRepository settingRepository) {
+    public AdminController(AppSettingRepository settingRepository,
+            com.mushroom.stockkeeper.service.QrCodeService qrCodeService) {
         this.settingRepository = settingRepository;
+        this.qrCodeService = qrCodeService;
     }
 
     @GetMapping("/settings")
@@ -30,6 +33,7 @@ public class AdminController {
                 .collect(Collectors.toMap(AppSetting::getSettingKey, AppSetting::getSettingValue));
 
         model.addAttribute("settings", settings);
+        model.addAttribute("qrCacheStats", qrCodeService.getCacheStats());
         return "admin/settings";
     }
 
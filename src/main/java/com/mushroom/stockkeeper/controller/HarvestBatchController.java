@@ -6,8 +6,11 @@ import com.mushroom.stockkeeper.model.Product;
 import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
 import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
 import com.mushroom.stockkeeper.repository.ProductRepository;
+import com.mushroom.stockkeeper.service.BatchCreationJobService;
 import com.mushroom.stockkeeper.service.BatchService;
-import com.mushroom.stockkeeper.service.QrCodeService;
+import com.mushroom.stockkeeper.service.BatchStockCounterService;
+import com.mushroom.stockkeeper.service.HarvestImportService;
+import com.mushroom.stockkeeper.service.LabelArtifactStore;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.*;
@@ -32,18 +35,32 @@ public class HarvestBatchController {
     private final ProductRepository productRepository;
     private final InventoryUnitRepository unitRepository;
     private final BatchService batchService;
-    private final QrCodeService qrCodeService;
     private final com.mushroom.stockkeeper.service.SettingsService settingsService;
+    private final BatchStockCounterService counterService;
+    private final BatchCreationJobService jobService;
+    private final HarvestImportService importService;
+    private final LabelArtifactStore artifactStore;
+    private final com.mushroom.stockkeeper.service.ZplLabelService zplLabelService;
+    private final com.mushroom.stockkeeper.service.LabelSheetRenderer sheetRenderer;
 
     public HarvestBatchController(HarvestBatchRepository batchRepository, ProductRepository productRepository,
-            InventoryUnitRepository unitRepository, BatchService batchService, QrCodeService qrCodeService,
-            com.mushroom.stockkeeper.service.SettingsService settingsService) {
+            InventoryUnitRepository unitRepository, BatchService batchService,
+            com.mushroom.stockkeeper.service.SettingsService settingsService,
+            BatchStockCounterService counterService, BatchCreationJobService jobService,
+            HarvestImportService importService, LabelArtifactStore artifactStore,
+            com.mushroom.stockkeeper.service.ZplLabelService zplLabelService,
+            com.mushroom.stockkeeper.service.LabelSheetRenderer sheetRenderer) {
         this.batchRepository = batchRepository;
         this.productRepository = productRepository;
         this.unitRepository = unitRepository;
         this.batchService = batchService;
-        this.qrCodeService = qrCodeService;
         this.settingsService = settingsService;
+        this.counterService = counterService;
+        this.jobService = jobService;
+        this.importService = importService;
+        this.artifactStore = artifactStore;
+        this.zplLabelService = zplLabelService;
+        this.sheetRenderer = sheetRenderer;
     }
 
     @GetMapping
@@ -110,6 +127,8 @@ public class HarvestBatchController {
 
         model.addAttribute("batchesPage", batchesPage); // Use Page object
         model.addAttribute("batches", batchesPage.getContent()); // Maintain compatibility
+        model.addAttribute("stockCounters", counterService.getAll(batchesPage.getContent().stream()
+                .map(HarvestBatch::getId).collect(Collectors.toList())));
         model.addAttribute("products", productRepository.findAll());
         model.addAttribute("currentFilter", filter);
         model.addAttribute("currentProductId", productId);
@@ -129,85 +148,227 @@ public class HarvestBatchController {
     public String save(@RequestParam Long productId, @RequestParam Integer quantity,
             @RequestParam(required = false) LocalDate batchDate) {
         Product product = productRepository.findById(productId).orElseThrow();
-        HarvestBatch savedBatch = batchService.createBatch(product, quantity, batchDate);
+        // Large batches: save the header now, units are created in the background
+        // and the detail page shows progress
+        HarvestBatch savedBatch = jobService.shouldRunAsync(quantity)
+                ? jobService.start(product, quantity, batchDate)
+                : batchService.createBatch(product, quantity, batchDate);
         return "redirect:/batches/" + savedBatch.getId();
     }
 
+    // Rows per page of the batch detail unit table (first render and each scroll fetch)
+    private static final int UNIT_PAGE_SIZE = 100;
+
+    @GetMapping("/import")
+    public String importForm() {
+        return "batches/import";
+    }
+
+    @PostMapping(value = "/import", consumes = org.springframework.http.MediaType.MULTIPART_FORM_DATA_VALUE)
+    public String importCsv(@RequestParam("file") org.springframework.web.multipart.MultipartFile file, Model model) {
+        try (java.io.Reader reader = new java.io.InputStreamReader(file.getInputStream(),
+                java.nio.charset.StandardCharsets.UTF_8)) {
+            model.addAttribute("result", importService.importCsv(reader));
+        } catch (java.io.IOException e) {
+            model.addAttribute("error", "Error: " + e.getMessage());
+        }
+        return "batches/import";
+    }
+
+    // Same import for scripts: POST the CSV as the request body (text/csv) with
+    // HTTP Basic credentials, e.g. curl -u user:pass -H 'Content-Type: text/csv'
+    // --data-binary @log.csv. Such requests need no CSRF token (see SecurityConfig);
+    // a browser session posting here still does.
+    @PostMapping(value = "/import", consumes = "text/csv")
+    @ResponseBody
+    public com.mushroom.stockkeeper.dto.HarvestImportResult importCsvStream(java.io.Reader body)
+            throws java.io.IOException {
+        return importService.importCsv(body);
+    }
+
     @GetMapping("/{id}")
-    public String detail(@PathVariable Long id, Model model) {
+    public String detail(@PathVariable Long id,
+            @RequestParam(required = false) com.mushroom.stockkeeper.model.InventoryStatus status,
+            Model model) {
         HarvestBatch batch = batchRepository.findById(id).orElseThrow();
-        // Since we don't have a direct List<Unit> in Batch entity (to save memory/lazy
-        // load), we fetch from repo
-        // Wait, I should have added @OneToMany in HarvestBatch for convenience or use
-        // Repository.
-        // I didn't add it in the Entity step (to keep it simple). Let's use Repository.
-        // Actually, for "Print", we need them.
-        // Since we don't have a direct List<Unit> in Batch entity (to save memory/lazy
-        // load), we fetch from repo
-        // Optimized: Use direct DB query
-        List<InventoryUnit> units = unitRepository.findByBatchId(id);
 
+        // Only the first page is rendered; the rest is fetched from /units while scrolling
         model.addAttribute("batch", batch);
-        model.addAttribute("units", units);
+        model.addAttribute("unitPage", findUnitPage(id, status, 0, UNIT_PAGE_SIZE));
+        model.addAttribute("currentStatus", status);
+        model.addAttribute("stock", counterService.get(id));
+        model.addAttribute("job", jobService.getProgress(id).orElse(null));
         return "batches/detail";
     }
 
+    @GetMapping("/{id}/units")
+    @ResponseBody
+    public com.mushroom.stockkeeper.dto.BatchUnitPage units(@PathVariable Long id,
+            @RequestParam(required = false) com.mushroom.stockkeeper.model.InventoryStatus status,
+            @RequestParam(defaultValue = "0") int afterSeq,
+            @RequestParam(defaultValue = "100") int size) {
+        return findUnitPage(id, status, afterSeq, Math.max(1, Math.min(size, 500)));
+    }
+
+    private com.mushroom.stockkeeper.dto.BatchUnitPage findUnitPage(Long batchId,
+            com.mushroom.stockkeeper.model.InventoryStatus status, int afterSeq, int size) {
+        org.springframework.data.domain.Limit limit = org.springframework.data.domain.Limit.of(size);
+        List<com.mushroom.stockkeeper.dto.BatchUnitRow> rows = status != null
+                ? unitRepository.findUnitRowsByStatus(batchId, status, afterSeq, limit)
+                : unitRepository.findUnitRows(batchId, afterSeq, limit);
+        Integer nextSeq = rows.size() == size ? rows.get(rows.size() - 1).seq() : null;
+        return new com.mushroom.stockkeeper.dto.BatchUnitPage(rows, nextSeq);
+    }
+
+    @GetMapping("/{id}/progress")
+    @ResponseBody
+    public org.springframework.http.ResponseEntity<com.mushroom.stockkeeper.dto.BatchJobProgress> progress(
+            @PathVariable Long id) {
+        return jobService.getProgress(id)
+                .map(org.springframework.http.ResponseEntity::ok)
+                .orElse(org.springframework.http.ResponseEntity.notFound().build());
+    }
+
+    @PostMapping("/{id}/resume")
+    public String resume(@PathVariable Long id,
+            org.springframework.web.servlet.mvc.support.RedirectAttributes redirectAttributes) {
+        try {
+            jobService.resume(id);
+            redirectAttributes.addFlashAttribute("success", "Resumed unit creation.");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Error: " + e.getMessage());
+        }
+        return "redirect:/batches/" + id;
+    }
+
+    // Streams the label sheet. A whole batch is printed as jobs of whole sheets
+    // (?job=), each kept in the label artifact store after its first print;
+    // single units and seq ranges are read by an indexed seq query.
     @GetMapping("/{id}/print")
-    public String printLabels(@PathVariable Long id,
+    public org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> printLabels(
+            @PathVariable Long id,
             @RequestParam(required = false) Long unitId,
             @RequestParam(required = false) Integer seqStart,
             @RequestParam(required = false) Integer seqEnd,
-            Model model) {
+            @RequestParam(defaultValue = "1") int job,
+            jakarta.servlet.http.HttpServletRequest request,
+            jakarta.servlet.http.HttpServletResponse response) {
         HarvestBatch batch = batchRepository.findById(id).orElseThrow();
+        Map<String, Object> settings = labelSettings();
 
-        List<InventoryUnit> units;
-
-        // Base List
-        // Optimized: Use direct DB query
-        List<InventoryUnit> allBatchUnits = unitRepository.findByBatchId(id);
-
+        int afterSeq;
+        int toSeq;
+        int jobs = 1;
+        String fingerprint = null;
         if (unitId != null) {
             // Print specific unit
-            units = allBatchUnits.stream()
-                    .filter(u -> u.getId().equals(unitId))
-                    .collect(Collectors.toList());
+            InventoryUnit unit = unitRepository.findById(unitId)
+                    .filter(u -> u.getBatch().getId().equals(id)).orElseThrow();
+            afterSeq = unit.getSeq() - 1;
+            toSeq = unit.getSeq();
         } else if (seqStart != null && seqEnd != null) {
             // Print Range (e.g. 1 to 50)
-            // Assumption: UUID is BatchCode-SEQ.
-            units = allBatchUnits.stream()
-                    .filter(u -> {
-                        try {
-                            String uuid = u.getUuid();
-                            String seqStr = uuid.substring(uuid.lastIndexOf('-') + 1);
-                            int seq = Integer.parseInt(seqStr);
-                            return seq >= seqStart && seq <= seqEnd;
-                        } catch (Exception e) {
-                            return false; // Skip malformed
-                        }
-                    })
-                    .collect(Collectors.toList());
+            afterSeq = Math.max(0, seqStart - 1);
+            toSeq = seqEnd;
         } else {
-            // Print All
-            units = allBatchUnits;
+            // Print All, one job at a time
+            int perJob = sheetRenderer.labelsPerJob((String) settings.get("labelSheetSize"));
+            jobs = Math.max(1, (batch.getTotalUnits() + perJob - 1) / perJob);
+            job = Math.max(1, Math.min(job, jobs));
+            afterSeq = (job - 1) * perJob;
+            toSeq = job * perJob;
+
+            fingerprint = artifactStore.fingerprint(batch, unitRepository.countByBatchId(id), settings);
+            java.nio.file.Path sheet = artifactStore.find(id, fingerprint, job).orElse(null);
+            if (sheet != null) {
+                return htmlStream(out -> java.nio.file.Files.copy(sheet, out));
+            }
         }
 
-        // Generate Base64 QRs for each unit
-        // Map<UnitId, Base64String>
-        Map<Long, String> qrCodes = units.stream().collect(Collectors.toMap(
-                InventoryUnit::getId,
-                u -> qrCodeService.generateQrCodeBase64(u.getQrCodeContent(), 150, 150)));
+        // Loaded here, the labels are rendered after the request thread returns
+        batch.getProduct().getNutritionLineItems().size();
 
-        model.addAttribute("batch", batch);
-        model.addAttribute("units", units);
-        model.addAttribute("qrCodes", qrCodes);
-        model.addAttribute("companyName", settingsService.getCompanyName());
-        model.addAttribute("contactNumber", settingsService.getContactNumber());
-        model.addAttribute("registeredOfficeAddress", settingsService.getRegisteredOfficeAddress());
-        model.addAttribute("customerCareAddress", settingsService.getCustomerCareAddress());
-        model.addAttribute("labelSheetSize", settingsService.getLabelSheetSize());
-        model.addAttribute("customLabelWidth", settingsService.getCustomLabelWidth());
-        model.addAttribute("customLabelHeight", settingsService.getCustomLabelHeight());
-        return "batches/print";
+        var exchange = org.thymeleaf.web.servlet.JakartaServletWebApplication
+                .buildApplication(request.getServletContext()).buildExchange(request, response);
+        org.thymeleaf.context.WebContext context = new org.thymeleaf.context.WebContext(exchange, request.getLocale());
+        context.setVariables(settings);
+        context.setVariable("batch", batch);
+        context.setVariable("printJob", job);
+        context.setVariable("printJobs", jobs);
+
+        String key = fingerprint;
+        int from = afterSeq;
+        int to = toSeq;
+        int jobNo = job;
+        return htmlStream(out -> {
+            java.io.Writer writer = new java.io.OutputStreamWriter(out, java.nio.charset.StandardCharsets.UTF_8);
+            if (key == null) {
+                sheetRenderer.render(context, id, from, to, writer, null);
+                return;
+            }
+            // First print of this job: stream it and keep a copy for reprints
+            java.nio.file.Path tmp = artifactStore.newTempFile(id);
+            try {
+                try (java.io.Writer copy = java.nio.file.Files.newBufferedWriter(tmp)) {
+                    sheetRenderer.render(context, id, from, to, writer, copy);
+                }
+                artifactStore.commit(id, key, jobNo, tmp);
+            } finally {
+                java.nio.file.Files.deleteIfExists(tmp);
+            }
+        });
+    }
+
+    private org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> htmlStream(
+            org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody body) {
+        return org.springframework.http.ResponseEntity.ok()
+                .contentType(new org.springframework.http.MediaType(org.springframework.http.MediaType.TEXT_HTML,
+                        java.nio.charset.StandardCharsets.UTF_8))
+                .cacheControl(org.springframework.http.CacheControl.noCache())
+                .body(body);
+    }
+
+    // Raw ZPL straight to the thermal printer in target_printer
+    @PostMapping("/{id}/print/zpl")
+    public String printZpl(@PathVariable Long id,
+            @RequestParam(required = false) Integer seqStart,
+            @RequestParam(required = false) Integer seqEnd,
+            org.springframework.web.servlet.mvc.support.RedirectAttributes redirectAttributes) {
+        try {
+            int sent = zplLabelService.print(id, seqStart, seqEnd);
+            redirectAttributes.addFlashAttribute("success", "Sent " + sent + " labels to the printer.");
+        } catch (Exception e) {
+            redirectAttributes.addFlashAttribute("error", "Printing failed: " + e.getMessage());
+        }
+        return "redirect:/batches/" + id;
+    }
+
+    // The same ZPL as a download, for printers without a raw port
+    @GetMapping("/{id}/labels.zpl")
+    public org.springframework.http.ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody> downloadZpl(
+            @PathVariable Long id,
+            @RequestParam(required = false) Integer seqStart,
+            @RequestParam(required = false) Integer seqEnd) {
+        HarvestBatch batch = batchRepository.findById(id).orElseThrow();
+        return org.springframework.http.ResponseEntity.ok()
+                .contentType(org.springframework.http.MediaType.TEXT_PLAIN)
+                .header(org.springframework.http.HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + batch.getBatchCode() + ".zpl\"")
+                .body(out -> zplLabelService.write(id, seqStart, seqEnd, out));
+    }
+
+    // Settings shown on labels; also part of the artifact fingerprint
+    private Map<String, Object> labelSettings() {
+        Map<String, Object> settings = new java.util.HashMap<>();
+        settings.put("qrExtension", settingsService.getQrImageFormat().toLowerCase());
+        settings.put("companyName", settingsService.getCompanyName());
+        settings.put("contactNumber", settingsService.getContactNumber());
+        settings.put("registeredOfficeAddress", settingsService.getRegisteredOfficeAddress());
+        settings.put("customerCareAddress", settingsService.getCustomerCareAddress());
+        settings.put("labelSheetSize", settingsService.getLabelSheetSize());
+        settings.put("customLabelWidth", settingsService.getCustomLabelWidth());
+        settings.put("customLabelHeight", settingsService.getCustomLabelHeight());
+        return settings;
     }
 
     @PostMapping("/{id}/delete")
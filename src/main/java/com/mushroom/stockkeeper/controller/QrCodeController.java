@@ -0,0 +1,81 @@
+package com.mushroom.stockkeeper.controller;
+
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import com.mushroom.stockkeeper.service.QrCodeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Controller;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+// Label QR images by unit UUID. A unit's QR content never changes once the
+// unit exists, so the images can be cached by the browser for good and reused
+// across reprints; the ETag covers the odd revalidation.
+@Controller
+@RequestMapping("/qr")
+public class QrCodeController {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(QrCodeController.class);
+
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+
+    private final InventoryUnitRepository unitRepository;
+    private final QrCodeService qrCodeService;
+
+    public QrCodeController(InventoryUnitRepository unitRepository, QrCodeService qrCodeService) {
+        this.unitRepository = unitRepository;
+        this.qrCodeService = qrCodeService;
+    }
+
+    @GetMapping("/{uuid}.png")
+    public ResponseEntity<byte[]> png(@PathVariable String uuid,
+            @RequestParam(defaultValue = "150") int size, WebRequest request) throws Exception {
+        return image(uuid, size, QrCodeService.FORMAT_PNG, request);
+    }
+
+    @GetMapping("/{uuid}.svg")
+    public ResponseEntity<byte[]> svg(@PathVariable String uuid,
+            @RequestParam(defaultValue = "150") int size, WebRequest request) throws Exception {
+        return image(uuid, size, QrCodeService.FORMAT_SVG, request);
+    }
+
+    private ResponseEntity<byte[]> image(String uuid, int size, String format, WebRequest request) throws Exception {
+        String content = unitRepository.findQrCodeContentByUuid(uuid).orElse(null);
+        if (content == null) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        int px = Math.max(50, Math.min(size, 1000));
+
+        String etag = "\"" + DigestUtils.md5DigestAsHex(
+                (content + "|" + format + "|" + px).getBytes(StandardCharsets.UTF_8)) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null; // 304 already written, with the ETag
+        }
+
+        boolean svg = QrCodeService.FORMAT_SVG.equals(format);
+        byte[] body;
+        try {
+            body = svg
+                    ? qrCodeService.generateQrCodeSvg(content, px, px).getBytes(StandardCharsets.UTF_8)
+                    : qrCodeService.generateQrCodeImage(content, px, px);
+        } catch (Exception e) {
+            // The label prints without its QR code, so say which unit it was
+            logger.warn("QR rendering failed for unit {}: {}", uuid, e.getMessage());
+            throw e;
+        }
+        return ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(IMMUTABLE)
+                .contentType(svg ? MediaType.valueOf("image/svg+xml") : MediaType.IMAGE_PNG)
+                .body(body);
+    }
+}
@@ -34,11 +34,8 @@ public class ReturnsController {
         if (uuid == null)
             return java.util.Map.of("valid", false, "message", "No UUID provided");
 
-        if (uuid.startsWith("U:"))
-            uuid = uuid.substring(2);
-
         try {
-            var unitOpt = unitRepository.findByUuid(uuid);
+            var unitOpt = unitRepository.findByCode(com.mushroom.stockkeeper.util.UnitCode.parse(uuid));
             if (unitOpt.isEmpty()) {
                 return java.util.Map.of("valid", false, "message", "UUID not found");
             }
@@ -47,9 +44,11 @@ public class ReturnsController {
                 return java.util.Map.of("valid", false, "message", "Unit is " + unit.getStatus() + " (Must be SOLD)");
             }
 
+            // uuid: canonical id, so compact and legacy scans of the same unit match
             return java.util.Map.of(
                     "valid", true,
                     "message", "Valid",
+                    "uuid", unit.getUuid(),
                     "product", unit.getBatch().getProduct().getName(),
                     "sku", unit.getBatch().getProduct().getSku());
         } catch (Exception e) {
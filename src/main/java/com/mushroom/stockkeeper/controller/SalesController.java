@@ -36,17 +36,23 @@ public class SalesController {
     private final CustomerRepository customerRepository;
     private final InventoryUnitRepository unitRepository;
     private final com.mushroom.stockkeeper.repository.HarvestBatchRepository batchRepository;
+    private final com.mushroom.stockkeeper.service.FefoIndexService fefoIndex;
+    private final com.mushroom.stockkeeper.service.OrderSessionHub sessionHub;
 
     public SalesController(SalesService salesService, SalesOrderRepository orderRepository,
             CustomerRepository customerRepository, InventoryUnitRepository unitRepository,
             com.mushroom.stockkeeper.repository.InvoiceRepository invoiceRepository,
-            com.mushroom.stockkeeper.repository.HarvestBatchRepository batchRepository) {
+            com.mushroom.stockkeeper.repository.HarvestBatchRepository batchRepository,
+            com.mushroom.stockkeeper.service.FefoIndexService fefoIndex,
+            com.mushroom.stockkeeper.service.OrderSessionHub sessionHub) {
         this.salesService = salesService;
         this.orderRepository = orderRepository;
         this.customerRepository = customerRepository;
         this.unitRepository = unitRepository;
         this.invoiceRepository = invoiceRepository;
         this.batchRepository = batchRepository;
+        this.fefoIndex = fefoIndex;
+        this.sessionHub = sessionHub;
     }
 
     @GetMapping
@@ -242,29 +248,123 @@ public class SalesController {
         model.addAttribute("summaryRows", summaryRows);
         model.addAttribute("grandTotal", grandTotal);
 
-        // Add available inventory for manual selection
-        model.addAttribute("availableUnits",
-                unitRepository.findByStatus(com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE));
-
-        // Add batches for filtering
-        model.addAttribute("availableBatches", batchRepository.findAll(org.springframework.data.domain.Sort
-                .by(org.springframework.data.domain.Sort.Direction.DESC, "batchDate")));
+        // Batches in stock for filtering; units themselves are searched via
+        // /units/search, so the page does not grow with inventory
+        model.addAttribute("availableBatches", batchRepository.findPickBatches());
 
         return "sales/picking"; // The Scanning Interface
     }
 
-    // Ajax Endpoints for Scanning
+    // Ajax Endpoints for Scanning. They answer with an OrderDelta the page
+    // patches itself with, rather than reloading the whole order.
     @PostMapping("/{id}/allocate")
     @ResponseBody
     public ResponseEntity<?> allocate(@PathVariable Long id, @RequestBody String qrContent) {
         try {
             salesService.allocateUnit(id, qrContent);
-            return ResponseEntity.ok().build();
+            com.mushroom.stockkeeper.dto.PickedUnit added = unitRepository
+                    .findPickedUnit(com.mushroom.stockkeeper.util.UnitCode.parse(qrContent)).orElse(null);
+            return ResponseEntity.ok(salesService.orderDelta(id, added, null));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Pasted or batch-scanned codes in one round trip; per-code results
+    @PostMapping("/{id}/allocate/bulk")
+    @ResponseBody
+    public ResponseEntity<?> allocateBulk(@PathVariable Long id, @RequestBody java.util.List<String> qrContents) {
+        try {
+            return ResponseEntity.ok(salesService.allocateUnits(id, qrContents));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
     }
 
+    // Drains a device's offline scan queue; safe to retry with the same keys.
+    // The delta names the unit when a single scan was added.
+    @PostMapping("/{id}/allocate/sync")
+    @ResponseBody
+    public ResponseEntity<?> syncScans(@PathVariable Long id,
+            @RequestBody java.util.List<com.mushroom.stockkeeper.dto.QueuedScan> scans) {
+        try {
+            List<com.mushroom.stockkeeper.dto.AllocationResult> results = salesService.syncScans(id, scans);
+            com.mushroom.stockkeeper.dto.PickedUnit added = null;
+            if (results.size() == 1 && results.get(0).allocated()) {
+                added = unitRepository.findPickedUnit(com.mushroom.stockkeeper.util.UnitCode.parse(scans.get(0).code()))
+                        .orElse(null);
+            }
+            return ResponseEntity.ok(Map.of("results", results, "delta", salesService.orderDelta(id, added, null)));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // "40 boxes of X": picks the units server-side, oldest expiry first
+    @PostMapping("/{id}/allocate/quantity")
+    @ResponseBody
+    public ResponseEntity<?> allocateQuantity(@PathVariable Long id, @RequestBody java.util.Map<String, Object> payload) {
+        try {
+            Long productId = Long.valueOf(payload.get("productId").toString());
+            int qty = Integer.parseInt(payload.get("qty").toString());
+            int allocated = salesService.allocateByQuantity(id, productId, qty);
+            return ResponseEntity.ok(java.util.Map.of("requested", qty, "allocated", allocated));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Typeahead for the manual unit picker (select2 ajax): AVAILABLE units by
+    // uuid prefix, optionally within a product or batch, keyset-paged by id
+    @GetMapping("/{id}/units/search")
+    @ResponseBody
+    public Map<String, Object> searchUnits(@PathVariable Long id,
+            @RequestParam(defaultValue = "") String q,
+            @RequestParam(required = false) Long productId,
+            @RequestParam(required = false) Long batchId,
+            @RequestParam(defaultValue = "0") long after) {
+        int pageSize = 30;
+        String prefix = q.trim();
+        if (prefix.startsWith(com.mushroom.stockkeeper.util.UnitCode.LEGACY_PREFIX)) {
+            prefix = prefix.substring(com.mushroom.stockkeeper.util.UnitCode.LEGACY_PREFIX.length());
+        }
+        // One extra row tells whether there is another page
+        List<com.mushroom.stockkeeper.dto.PickedUnit> units = unitRepository.searchAvailable(productId, batchId,
+                prefix, after, pageSize + 1);
+        boolean more = units.size() > pageSize;
+        if (more) {
+            units = units.subList(0, pageSize);
+        }
+        List<Map<String, Object>> results = units.stream()
+                .map(u -> Map.<String, Object>of("id", u.uuid(), "text", u.uuid() + " - " + u.productName()))
+                .toList();
+        return Map.of("results", results,
+                "next", units.isEmpty() ? after : units.get(units.size() - 1).id(),
+                "pagination", Map.of("more", more));
+    }
+
+    // Live stream of the order's changes for the picking page (EventSource)
+    @GetMapping(value = "/{id}/events", produces = org.springframework.http.MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public ResponseEntity<org.springframework.web.servlet.mvc.method.annotation.SseEmitter> events(
+            @PathVariable Long id) {
+        if (!orderRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(sessionHub.subscribe(id));
+    }
+
+    // Oldest-expiry-first units of a product for the picker to take
+    @GetMapping("/{id}/suggest")
+    @ResponseBody
+    public ResponseEntity<?> suggest(@PathVariable Long id, @RequestParam Long productId,
+            @RequestParam(defaultValue = "1") int qty) {
+        if (!orderRepository.existsById(id)) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(fefoIndex.suggest(productId, Math.max(1, Math.min(qty, 500))));
+    }
+
     @PostMapping("/{id}/update-price")
     @ResponseBody
     public ResponseEntity<?> updatePrice(@PathVariable Long id, @RequestBody java.util.Map<String, Object> payload) {
@@ -272,7 +372,7 @@ public class SalesController {
             Long productId = Long.valueOf(payload.get("productId").toString());
             java.math.BigDecimal price = new java.math.BigDecimal(payload.get("price").toString());
             salesService.updateProductPrice(id, productId, price);
-            return ResponseEntity.ok().build();
+            return ResponseEntity.ok(salesService.orderDelta(id, null, null));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -284,7 +384,7 @@ public class SalesController {
         try {
             java.math.BigDecimal discountPercentage = new java.math.BigDecimal(payload.get("discount").toString());
             salesService.updateOrderDiscount(id, discountPercentage);
-            return ResponseEntity.ok().build();
+            return ResponseEntity.ok(salesService.orderDelta(id, null, null));
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(e.getMessage());
         }
@@ -301,6 +401,18 @@ public class SalesController {
         return "redirect:/sales/" + id;
     }
 
+    // Same as removeUnit, for the picking page's fetch (Accept: application/json)
+    @PostMapping(value = "/{id}/remove", produces = org.springframework.http.MediaType.APPLICATION_JSON_VALUE)
+    @ResponseBody
+    public ResponseEntity<?> removeUnitJson(@PathVariable Long id, @RequestParam Long unitId) {
+        try {
+            salesService.removeUnit(unitId);
+            return ResponseEntity.ok(salesService.orderDelta(id, null, unitId));
+        } catch (Exception e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
     @PostMapping("/{id}/finalize")
     public String finalizeOrder(@PathVariable Long id,
             @RequestParam(defaultValue = "false") boolean isPaid,
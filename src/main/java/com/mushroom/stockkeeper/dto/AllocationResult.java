@@ -0,0 +1,10 @@
+package com.mushroom.stockkeeper.dto;
+
+// Outcome of one scanned code in a bulk allocation. uuid is null when the
+// code did not resolve to a unit; message explains a failure.
+public record AllocationResult(
+                String code,
+                String uuid,
+                boolean allocated,
+                String message) {
+}
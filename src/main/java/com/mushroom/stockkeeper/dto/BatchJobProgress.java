@@ -0,0 +1,10 @@
+package com.mushroom.stockkeeper.dto;
+
+public record BatchJobProgress(
+                Long batchId,
+                String state,
+                int created,
+                int total,
+                int percent,
+                String error) {
+}
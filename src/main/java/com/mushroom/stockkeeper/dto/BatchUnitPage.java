@@ -0,0 +1,9 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.util.List;
+
+// nextSeq is the keyset cursor for the following page, or null on the last page
+public record BatchUnitPage(
+                List<BatchUnitRow> units,
+                Integer nextSeq) {
+}
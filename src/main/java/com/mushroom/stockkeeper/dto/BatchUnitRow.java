@@ -0,0 +1,15 @@
+package com.mushroom.stockkeeper.dto;
+
+import com.mushroom.stockkeeper.model.InventoryStatus;
+
+import java.math.BigDecimal;
+
+// One row of the batch detail unit table; avoids loading InventoryUnit and
+// its eager batch/product/order graph per row.
+public record BatchUnitRow(
+                Long id,
+                String uuid,
+                Integer seq,
+                InventoryStatus status,
+                BigDecimal soldPrice) {
+}
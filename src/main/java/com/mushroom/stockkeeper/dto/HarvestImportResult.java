@@ -0,0 +1,18 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.util.List;
+
+public record HarvestImportResult(
+                List<HarvestImportRow> rows,
+                int batchesCreated,
+                long unitsCreated,
+                long elapsedMs) {
+
+        public long getFailed() {
+                return rows.size() - batchesCreated;
+        }
+
+        public long getUnitsPerSecond() {
+                return elapsedMs == 0 ? unitsCreated : unitsCreated * 1000 / elapsedMs;
+        }
+}
@@ -0,0 +1,19 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.time.LocalDate;
+
+// Outcome of one CSV line; error is null when the batch was created.
+// background: the units are still being created by a BatchCreationJobService job.
+public record HarvestImportRow(
+                int line,
+                String sku,
+                Integer quantity,
+                LocalDate batchDate,
+                String batchCode,
+                boolean background,
+                String error) {
+
+        public boolean isOk() {
+                return error == null;
+        }
+}
@@ -0,0 +1,10 @@
+package com.mushroom.stockkeeper.dto;
+
+// What a printed label needs of a unit, read in seq order without loading
+// InventoryUnit.
+public record LabelRow(
+                Long id,
+                Integer seq,
+                String uuid,
+                String qrCodeContent) {
+}
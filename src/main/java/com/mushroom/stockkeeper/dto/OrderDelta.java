@@ -0,0 +1,19 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+// What the picking page needs after a scan, removal or price change, so it can
+// patch itself instead of reloading: the order summary and the unit that was
+// added or removed (null when none)
+public record OrderDelta(
+                Long orderId,
+                long unitCount,
+                List<OrderSummaryRow> rows,
+                BigDecimal subTotal,
+                BigDecimal discountPercentage,
+                BigDecimal discountValue,
+                BigDecimal total,
+                PickedUnit added,
+                Long removedUnitId) {
+}
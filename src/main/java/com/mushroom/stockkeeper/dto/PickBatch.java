@@ -0,0 +1,9 @@
+package com.mushroom.stockkeeper.dto;
+
+// A batch offered in the picking page's filters
+public record PickBatch(
+                Long id,
+                String batchCode,
+                Long productId,
+                String productName) {
+}
@@ -0,0 +1,12 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Units to pick from one batch, in first-expiry-first-out order
+public record PickSuggestion(
+                Long batchId,
+                String batchCode,
+                LocalDate expiryDate,
+                List<String> uuids) {
+}
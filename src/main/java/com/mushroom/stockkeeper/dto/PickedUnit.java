@@ -0,0 +1,8 @@
+package com.mushroom.stockkeeper.dto;
+
+// A unit as listed under an order's allocated items
+public record PickedUnit(
+                Long id,
+                String uuid,
+                String productName) {
+}
@@ -0,0 +1,15 @@
+package com.mushroom.stockkeeper.dto;
+
+public record QrCacheStats(
+                long hits,
+                long misses,
+                long evictions,
+                int entries,
+                long bytes,
+                long maxBytes) {
+
+        public double getHitRate() {
+                long lookups = hits + misses;
+                return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+}
@@ -0,0 +1,8 @@
+package com.mushroom.stockkeeper.dto;
+
+// A scan from a device's offline queue. key is generated on the device when
+// the label is scanned and stays the same across every retry of the sync.
+public record QueuedScan(
+                String key,
+                String code) {
+}
@@ -0,0 +1,13 @@
+package com.mushroom.stockkeeper.dto;
+
+import java.math.BigDecimal;
+
+// What a scan claim needs of an AVAILABLE unit, read without a lock: the
+// version the claim must still find, the batch for the stock counter and the
+// unit's price on the order (null when the product has none)
+public record UnitClaim(
+                Long unitId,
+                Long version,
+                Long batchId,
+                BigDecimal price) {
+}
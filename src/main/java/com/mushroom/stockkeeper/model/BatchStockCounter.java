@@ -0,0 +1,66 @@
+package com.mushroom.stockkeeper.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+// Denormalised unit counts per batch, one column per InventoryStatus.
+// Maintained in the same transaction as every unit status change
+// (see BatchStockCounterService) and rebuilt nightly from sk_inventory_units.
+@Entity
+@Table(name = "sk_batch_stock_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchStockCounter {
+    @Id
+    private Long batchId;
+
+    @Column(nullable = false)
+    private long available;
+
+    @Column(nullable = false)
+    private long allocated;
+
+    @Column(nullable = false)
+    private long sold;
+
+    @Column(nullable = false)
+    private long returned;
+
+    @Column(nullable = false)
+    private long spoiled;
+
+    private LocalDateTime reconciledAt;
+
+    public long get(InventoryStatus status) {
+        return switch (status) {
+            case AVAILABLE -> available;
+            case ALLOCATED -> allocated;
+            case SOLD -> sold;
+            case RETURNED -> returned;
+            case SPOILED -> spoiled;
+        };
+    }
+
+    public void set(InventoryStatus status, long count) {
+        switch (status) {
+            case AVAILABLE -> available = count;
+            case ALLOCATED -> allocated = count;
+            case SOLD -> sold = count;
+            case RETURNED -> returned = count;
+            case SPOILED -> spoiled = count;
+        }
+    }
+
+    // Units that have left AVAILABLE (allocated, sold, returned or spoiled)
+    public long getUsed() {
+        return allocated + sold + returned + spoiled;
+    }
+
+    public long getTotal() {
+        return available + getUsed();
+    }
+}
@@ -29,6 +29,11 @@ public class HarvestBatch {
 
     private Integer totalUnits;
 
+    // Set when deletion starts; units are then removed in chunks and the batch
+    // row last. A non-null value on a surviving batch means the delete was
+    // interrupted and is resumed (see BatchDeletionService).
+    private LocalDateTime deletionStartedAt;
+
     @Column(updatable = false)
     private LocalDateTime createdAt;
 
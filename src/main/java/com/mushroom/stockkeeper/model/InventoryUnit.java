@@ -7,7 +7,9 @@ import java.time.LocalDateTime;
 @Entity
 @Table(name = "sk_inventory_units", indexes = {
         @Index(name = "idx_unit_uuid", columnList = "uuid"),
-        @Index(name = "idx_unit_batch_status", columnList = "batch_id, status")
+        // Also serves (batch_id, status) lookups; replaces idx_unit_batch_status
+        @Index(name = "idx_unit_batch_status_seq", columnList = "batch_id, status, seq"),
+        @Index(name = "idx_unit_batch_seq", columnList = "batch_id, seq", unique = true)
 })
 @Data
 public class InventoryUnit {
@@ -22,6 +24,12 @@ public class InventoryUnit {
     @JoinColumn(name = "batch_id", nullable = false)
     private HarvestBatch batch;
 
+    // Position within the batch's sequence range (1..batch.totalUnits).
+    // The UUID suffix carries the same number; this column makes it queryable.
+    // Units from before the column existed are backfilled by DataInitializer.
+    @Column(nullable = false)
+    private Integer seq;
+
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private InventoryStatus status;
@@ -0,0 +1,70 @@
+package com.mushroom.stockkeeper.repository;
+
+import com.mushroom.stockkeeper.model.BatchStockCounter;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+// Counters are only ever written with bulk statements and read as unmanaged
+// snapshots (constructor expressions), so a counter loaded earlier in the same
+// transaction can never be stale or flushed over a concurrent increment.
+public interface BatchStockCounterRepository extends JpaRepository<BatchStockCounter, Long> {
+
+    String SNAPSHOT = "SELECT new com.mushroom.stockkeeper.model.BatchStockCounter(c.batchId, c.available, "
+            + "c.allocated, c.sold, c.returned, c.spoiled, c.reconciledAt) FROM BatchStockCounter c ";
+
+    @Query(SNAPSHOT + "WHERE c.batchId = :batchId")
+    Optional<BatchStockCounter> findSnapshot(@Param("batchId") Long batchId);
+
+    @Query(SNAPSHOT + "WHERE c.batchId IN :batchIds")
+    List<BatchStockCounter> findSnapshots(@Param("batchIds") Collection<Long> batchIds);
+
+    @Query(SNAPSHOT)
+    List<BatchStockCounter> findAllSnapshots();
+
+    @Modifying
+    @Query(value = "INSERT INTO sk_batch_stock_counters "
+            + "(batch_id, available, allocated, sold, returned, spoiled, reconciled_at) "
+            + "VALUES (:#{#c.batchId}, :#{#c.available}, :#{#c.allocated}, :#{#c.sold}, "
+            + ":#{#c.returned}, :#{#c.spoiled}, :#{#c.reconciledAt})", nativeQuery = true)
+    void insert(@Param("c") BatchStockCounter counter);
+
+    // Single-statement increment so concurrent transitions on the same batch
+    // serialise on the counter row instead of overwriting each other.
+    @Modifying
+    @Query("UPDATE BatchStockCounter c SET c.available = c.available + :available, "
+            + "c.allocated = c.allocated + :allocated, c.sold = c.sold + :sold, "
+            + "c.returned = c.returned + :returned, c.spoiled = c.spoiled + :spoiled "
+            + "WHERE c.batchId = :batchId")
+    int applyDelta(@Param("batchId") Long batchId,
+            @Param("available") long available,
+            @Param("allocated") long allocated,
+            @Param("sold") long sold,
+            @Param("returned") long returned,
+            @Param("spoiled") long spoiled);
+
+    @Modifying
+    @Query("UPDATE BatchStockCounter c SET c.available = :#{#c.available}, c.allocated = :#{#c.allocated}, "
+            + "c.sold = :#{#c.sold}, c.returned = :#{#c.returned}, c.spoiled = :#{#c.spoiled}, "
+            + "c.reconciledAt = :#{#c.reconciledAt} WHERE c.batchId = :#{#c.batchId}")
+    int overwrite(@Param("c") BatchStockCounter counter);
+
+    // Row lock on one counter, held while the batch is recounted
+    @Query(value = "SELECT batch_id FROM sk_batch_stock_counters WHERE batch_id = :batchId FOR UPDATE",
+            nativeQuery = true)
+    Optional<Long> lock(@Param("batchId") Long batchId);
+
+    @Modifying
+    @Query("DELETE FROM BatchStockCounter c WHERE NOT EXISTS "
+            + "(SELECT b.id FROM HarvestBatch b WHERE b.id = c.batchId)")
+    int deleteOrphans();
+
+    @Modifying
+    @Query("DELETE FROM BatchStockCounter c WHERE c.batchId IN :batchIds")
+    int deleteByBatchIds(@Param("batchIds") Collection<Long> batchIds);
+}
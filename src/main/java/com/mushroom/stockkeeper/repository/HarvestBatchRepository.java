@@ -10,10 +10,41 @@ public interface HarvestBatchRepository extends JpaRepository<HarvestBatch, Long
 
         long countByProductId(Long productId);
 
+        @org.springframework.data.jpa.repository.Query("SELECT b.id FROM HarvestBatch b")
+        java.util.List<Long> findAllIds();
+
+        // [id, productId, expiryDate, batchCode] for the FEFO pick index
+        @org.springframework.data.jpa.repository.Query("SELECT b.id, b.product.id, b.expiryDate, b.batchCode FROM HarvestBatch b WHERE b.deletionStartedAt IS NULL")
+        java.util.List<Object[]> findFefoEntries();
+
+        @org.springframework.data.jpa.repository.Query("SELECT b.id, b.product.id, b.expiryDate, b.batchCode FROM HarvestBatch b WHERE b.deletionStartedAt IS NULL AND b.id IN :ids")
+        java.util.List<Object[]> findFefoEntries(
+                        @org.springframework.data.repository.query.Param("ids") java.util.Collection<Long> ids);
+
+        // Batches that still have AVAILABLE units, newest first, for the picking
+        // page's filters. Bounded by what is in stock, not by batch history.
+        @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.PickBatch(b.id, b.batchCode, p.id, p.name) "
+                        + "FROM HarvestBatch b JOIN b.product p, BatchStockCounter c "
+                        + "WHERE c.batchId = b.id AND c.available > 0 AND b.deletionStartedAt IS NULL "
+                        + "ORDER BY b.batchDate DESC, b.id DESC")
+        java.util.List<com.mushroom.stockkeeper.dto.PickBatch> findPickBatches();
+
+        @org.springframework.data.jpa.repository.Query("SELECT b.id FROM HarvestBatch b WHERE b.deletionStartedAt IS NOT NULL")
+        java.util.List<Long> findIdsPendingDeletion();
+
         java.util.List<HarvestBatch> findByExpiryDateGreaterThanEqualOrExpiryDateIsNull(java.time.LocalDate date);
 
         java.util.List<HarvestBatch> findByExpiryDateLessThan(java.time.LocalDate date);
 
+        // [id, batchCode] of batches expired before the date that still have AVAILABLE
+        // units. Batches being deleted are left to the purge.
+        @org.springframework.data.jpa.repository.Query("SELECT b.id, b.batchCode FROM HarvestBatch b WHERE b.expiryDate < :date "
+                        + "AND b.deletionStartedAt IS NULL "
+                        + "AND EXISTS (SELECT u.id FROM InventoryUnit u WHERE u.batch = b "
+                        + "AND u.status = com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE) ORDER BY b.expiryDate")
+        java.util.List<Object[]> findExpiredWithAvailableUnits(
+                        @org.springframework.data.repository.query.Param("date") java.time.LocalDate date);
+
         // Filter by Product
         java.util.List<HarvestBatch> findByProductId(Long productId);
 
@@ -0,0 +1,28 @@
+package com.mushroom.stockkeeper.repository;
+
+import java.util.List;
+import java.util.Map;
+
+// Bulk operations on sk_inventory_units that bypass the persistence context.
+// Mixed into InventoryUnitRepository as a Spring Data fragment.
+public interface InventoryUnitBulkRepository {
+
+    // Inserts AVAILABLE units for sequence numbers fromSeq..toSeq (inclusive)
+    // using JDBC batching. Returns the number of rows inserted.
+    int insertAvailableUnits(Long batchId, String batchCode, int fromSeq, int toSeq);
+
+    // Fills seq for units created before the column existed, parsed from the
+    // UUID suffix (or after the batch's last seq when the UUID has none).
+    // Returns the number of rows updated.
+    int backfillUnitSequences();
+
+    // Deletes up to 'limit' AVAILABLE units of the batch in one set-based
+    // statement. Returns the number of rows deleted (0 when none are left);
+    // fewer than 'limit' does not mean none are left, as rows allocated
+    // meanwhile are skipped.
+    int deleteAvailableUnitsChunk(Long batchId, int limit);
+
+    // UUIDs of up to limits.get(batchId) AVAILABLE units of each batch, lowest
+    // seq first, read in one statement (one index range scan per batch).
+    Map<Long, List<String>> findAvailableUuids(Map<Long, Integer> limits);
+}
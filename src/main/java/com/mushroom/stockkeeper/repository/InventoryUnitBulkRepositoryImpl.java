@@ -0,0 +1,141 @@
+package com.mushroom.stockkeeper.repository;
+
+import com.mushroom.stockkeeper.model.InventoryStatus;
+import com.mushroom.stockkeeper.util.UnitCode;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class InventoryUnitBulkRepositoryImpl implements InventoryUnitBulkRepository {
+
+    // Rows per JDBC batch. With reWriteBatchedInserts (PostgreSQL) each batch is
+    // sent as a handful of multi-row INSERT statements.
+    private static final int JDBC_BATCH_SIZE = 1000;
+
+    private static final String INSERT_UNIT_SQL = "INSERT INTO sk_inventory_units "
+            + "(uuid, batch_id, seq, status, qr_code_content, created_at, version) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String UPDATE_SEQ_SQL = "UPDATE sk_inventory_units SET seq = ? WHERE id = ?";
+
+    // The filter is repeated on the outer DELETE: a row an allocation locked
+    // after the subquery chose it is re-checked (PostgreSQL, READ COMMITTED)
+    // once that allocation commits, and skipped if it is no longer AVAILABLE.
+    private static final String DELETE_CHUNK_SQL = "DELETE FROM sk_inventory_units WHERE batch_id = ? AND status = ? "
+            + "AND id IN (SELECT id FROM sk_inventory_units WHERE batch_id = ? AND status = ? LIMIT ?)";
+
+    // One branch per batch; each stops after its own LIMIT on (batch_id, status, seq)
+    private static final String AVAILABLE_UUIDS_BRANCH_SQL = "(SELECT batch_id, uuid, seq FROM sk_inventory_units "
+            + "WHERE batch_id = ? AND status = ? ORDER BY seq LIMIT ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public InventoryUnitBulkRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public int insertAvailableUnits(Long batchId, String batchCode, int fromSeq, int toSeq) {
+        // Entity callbacks (@PrePersist) do not run on this path, so createdAt and
+        // the initial version are set here.
+        Timestamp createdAt = Timestamp.valueOf(LocalDateTime.now());
+        int inserted = 0;
+
+        for (int chunkStart = fromSeq; chunkStart <= toSeq; chunkStart += JDBC_BATCH_SIZE) {
+            final int start = chunkStart;
+            final int size = Math.min(JDBC_BATCH_SIZE, toSeq - chunkStart + 1);
+
+            jdbcTemplate.batchUpdate(INSERT_UNIT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    // Sequential UUID: BatchCode-Sequence (same format as before);
+                    // the QR carries the compact (batchId, seq) payload
+                    int seq = start + i;
+                    String uuid = batchCode + "-" + seq;
+                    ps.setString(1, uuid);
+                    ps.setLong(2, batchId);
+                    ps.setInt(3, seq);
+                    ps.setString(4, InventoryStatus.AVAILABLE.name());
+                    ps.setString(5, UnitCode.encode(batchId, seq));
+                    ps.setTimestamp(6, createdAt);
+                    ps.setLong(7, 0L);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+            inserted += size;
+        }
+        return inserted;
+    }
+
+    @Override
+    public int backfillUnitSequences() {
+        List<Object[]> updates = new ArrayList<>();
+        Map<Long, List<Long>> unsequenced = new LinkedHashMap<>();
+        jdbcTemplate.query("SELECT id, batch_id, uuid FROM sk_inventory_units WHERE seq IS NULL ORDER BY id", rs -> {
+            UnitCode code = UnitCode.parse(rs.getString("uuid"));
+            if (code.seq() != null) {
+                updates.add(new Object[] { code.seq(), rs.getLong("id") });
+            } else {
+                unsequenced.computeIfAbsent(rs.getLong("batch_id"), k -> new ArrayList<>()).add(rs.getLong("id"));
+            }
+        });
+        batchUpdateSeq(updates);
+
+        // UUIDs without a sequence suffix: numbered after the batch's last unit
+        List<Object[]> appended = new ArrayList<>();
+        unsequenced.forEach((batchId, ids) -> {
+            int seq = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(seq), 0) FROM sk_inventory_units WHERE batch_id = ?", Integer.class, batchId);
+            for (Long id : ids) {
+                appended.add(new Object[] { ++seq, id });
+            }
+        });
+        batchUpdateSeq(appended);
+        return updates.size() + appended.size();
+    }
+
+    private void batchUpdateSeq(List<Object[]> updates) {
+        for (int i = 0; i < updates.size(); i += JDBC_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(UPDATE_SEQ_SQL, updates.subList(i, Math.min(i + JDBC_BATCH_SIZE, updates.size())));
+        }
+    }
+
+    @Override
+    public int deleteAvailableUnitsChunk(Long batchId, int limit) {
+        String available = InventoryStatus.AVAILABLE.name();
+        return jdbcTemplate.update(DELETE_CHUNK_SQL, batchId, available, batchId, available, limit);
+    }
+
+    @Override
+    public Map<Long, List<String>> findAvailableUuids(Map<Long, Integer> limits) {
+        Map<Long, List<String>> uuids = new LinkedHashMap<>();
+        if (limits.isEmpty()) {
+            return uuids;
+        }
+        List<String> branches = new ArrayList<>();
+        List<Object> args = new ArrayList<>();
+        limits.forEach((batchId, limit) -> {
+            branches.add(AVAILABLE_UUIDS_BRANCH_SQL);
+            args.add(batchId);
+            args.add(InventoryStatus.AVAILABLE.name());
+            args.add(limit);
+            uuids.put(batchId, new ArrayList<>());
+        });
+        jdbcTemplate.query(String.join(" UNION ALL ", branches) + " ORDER BY batch_id, seq",
+                rs -> {
+                    uuids.get(rs.getLong("batch_id")).add(rs.getString("uuid"));
+                }, args.toArray());
+        return uuids;
+    }
+}
@@ -4,17 +4,241 @@ import com.mushroom.stockkeeper.model.InventoryUnit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import java.util.Optional;
 
-public interface InventoryUnitRepository extends JpaRepository<InventoryUnit, Long> {
+public interface InventoryUnitRepository extends JpaRepository<InventoryUnit, Long>, InventoryUnitBulkRepository {
     Optional<InventoryUnit> findByUuid(String uuid);
 
+    // Just the label payload, for the QR image endpoint
+    @org.springframework.data.jpa.repository.Query("SELECT u.qrCodeContent FROM InventoryUnit u WHERE u.uuid = :uuid")
+    Optional<String> findQrCodeContentByUuid(@org.springframework.data.repository.query.Param("uuid") String uuid);
+
     java.util.List<InventoryUnit> findByStatus(com.mushroom.stockkeeper.model.InventoryStatus status);
 
     long countByBatchIdAndStatusNot(Long batchId, com.mushroom.stockkeeper.model.InventoryStatus status);
 
-    void deleteByBatchId(Long batchId);
-
     java.util.List<InventoryUnit> findByBatchId(Long batchId);
 
+    long countByBatchId(Long batchId);
+
+    // Last unit created for a batch; null when it has none
+    @org.springframework.data.jpa.repository.Query("SELECT MAX(u.seq) FROM InventoryUnit u WHERE u.batch.id = :batchId")
+    Integer findMaxSeqByBatchId(@org.springframework.data.repository.query.Param("batchId") Long batchId);
+
+    Optional<InventoryUnit> findByBatchIdAndSeq(Long batchId, Integer seq);
+
+    @org.springframework.data.jpa.repository.Lock(jakarta.persistence.LockModeType.PESSIMISTIC_WRITE)
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM InventoryUnit u WHERE u.batch.id = :batchId AND u.seq = :seq")
+    Optional<InventoryUnit> findByBatchIdAndSeqForUpdate(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("seq") Integer seq);
+
+    // Scanned label lookup: compact payloads go through idx_unit_batch_seq,
+    // legacy U: payloads through the uuid index
+    default Optional<InventoryUnit> findByCode(com.mushroom.stockkeeper.util.UnitCode code) {
+        return code.isCompact() ? findByBatchIdAndSeq(code.batchId(), code.seq()) : findByUuid(code.uuid());
+    }
+
+    default Optional<InventoryUnit> findByCodeForUpdate(com.mushroom.stockkeeper.util.UnitCode code) {
+        return code.isCompact() ? findByBatchIdAndSeqForUpdate(code.batchId(), code.seq())
+                : findByUuidForUpdate(code.uuid());
+    }
+
+    // Id resolution for bulk scans, without locks: [id, uuid] rows
+    @org.springframework.data.jpa.repository.Query("SELECT u.id, u.uuid FROM InventoryUnit u WHERE u.uuid IN :uuids")
+    java.util.List<Object[]> findIdsByUuidIn(
+            @org.springframework.data.repository.query.Param("uuids") java.util.Collection<String> uuids);
+
+    // [id, batchId, seq] rows; a superset of the wanted (batchId, seq) pairs
+    // when several batches are given, which callers filter
+    @org.springframework.data.jpa.repository.Query("SELECT u.id, u.batch.id, u.seq FROM InventoryUnit u "
+            + "WHERE u.batch.id IN :batchIds AND u.seq IN :seqs")
+    java.util.List<Object[]> findIdsByBatchIdInAndSeqIn(
+            @org.springframework.data.repository.query.Param("batchIds") java.util.Collection<Long> batchIds,
+            @org.springframework.data.repository.query.Param("seqs") java.util.Collection<Integer> seqs);
+
+    // Locks all the given units in one statement. Rows are locked in id order,
+    // so two bulk scans sharing units cannot deadlock on each other.
+    @org.springframework.data.jpa.repository.Lock(jakarta.persistence.LockModeType.PESSIMISTIC_WRITE)
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM InventoryUnit u WHERE u.id IN :ids ORDER BY u.id")
+    java.util.List<InventoryUnit> findAllByIdForUpdate(
+            @org.springframework.data.repository.query.Param("ids") java.util.Collection<Long> ids);
+
+    // Locks up to limit sellable AVAILABLE units of a product in pick order
+    // (first expiry first, batches without an expiry date last, then seq),
+    // skipping rows another transaction holds (lock timeout -2 = SKIP LOCKED),
+    // so pickers filling different orders never wait on each other. Only the
+    // unit rows are locked, not their batches.
+    @org.springframework.data.jpa.repository.Lock(jakarta.persistence.LockModeType.PESSIMISTIC_WRITE)
+    @org.springframework.data.jpa.repository.QueryHints(@jakarta.persistence.QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @org.springframework.data.jpa.repository.Query("SELECT u FROM InventoryUnit u JOIN u.batch b "
+            + "WHERE b.product.id = :productId AND u.status = com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE "
+            + "AND b.deletionStartedAt IS NULL AND (b.expiryDate >= :date OR b.expiryDate IS NULL) "
+            + "ORDER BY b.expiryDate ASC NULLS LAST, b.id, u.seq")
+    java.util.List<InventoryUnit> lockSellableSkipLocked(
+            @org.springframework.data.repository.query.Param("productId") Long productId,
+            @org.springframework.data.repository.query.Param("date") java.time.LocalDate date,
+            org.springframework.data.domain.Limit limit);
+
+    // Links and prices locked units in one statement; bumps version like any
+    // other set-based status change. Clears the persistence context, which
+    // would otherwise still hold the units as AVAILABLE.
+    @org.springframework.data.jpa.repository.Modifying(flushAutomatically = true, clearAutomatically = true)
+    @org.springframework.data.jpa.repository.Query("UPDATE InventoryUnit u SET u.status = com.mushroom.stockkeeper.model.InventoryStatus.ALLOCATED, "
+            + "u.salesOrder = :order, u.soldPrice = :price, u.version = u.version + 1 "
+            + "WHERE u.id IN :ids AND u.status = com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE")
+    int allocateAll(@org.springframework.data.repository.query.Param("ids") java.util.Collection<Long> ids,
+            @org.springframework.data.repository.query.Param("order") com.mushroom.stockkeeper.model.SalesOrder order,
+            @org.springframework.data.repository.query.Param("price") java.math.BigDecimal price);
+
+    // Lock-free scan claim, step 1: the AVAILABLE unit's id, version, batch and
+    // price on the order, read in one plain SELECT (no lock)
+    String CLAIM_READ = "SELECT new com.mushroom.stockkeeper.dto.UnitClaim(u.id, u.version, b.id, "
+            + "CASE WHEN UPPER(o.orderType) = 'WHOLESALE' THEN p.wholesalePrice ELSE p.retailPrice END) "
+            + "FROM InventoryUnit u JOIN u.batch b JOIN b.product p, SalesOrder o WHERE o.id = :orderId "
+            + "AND u.status = com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE ";
+
+    @org.springframework.data.jpa.repository.Query(CLAIM_READ + "AND u.uuid = :uuid")
+    Optional<com.mushroom.stockkeeper.dto.UnitClaim> findClaimByUuid(
+            @org.springframework.data.repository.query.Param("uuid") String uuid,
+            @org.springframework.data.repository.query.Param("orderId") Long orderId);
+
+    @org.springframework.data.jpa.repository.Query(CLAIM_READ + "AND b.id = :batchId AND u.seq = :seq")
+    Optional<com.mushroom.stockkeeper.dto.UnitClaim> findClaimByBatchIdAndSeq(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("seq") Integer seq,
+            @org.springframework.data.repository.query.Param("orderId") Long orderId);
+
+    default Optional<com.mushroom.stockkeeper.dto.UnitClaim> findClaim(com.mushroom.stockkeeper.util.UnitCode code,
+            Long orderId) {
+        return code.isCompact() ? findClaimByBatchIdAndSeq(code.batchId(), code.seq(), orderId)
+                : findClaimByUuid(code.uuid(), orderId);
+    }
+
+    // Step 2: takes the unit only if it still has the version read in step 1
+    // (every status change bumps it), its batch is sellable and the order is
+    // open. 0 rows means not claimed; the caller works out why.
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("UPDATE InventoryUnit u SET u.status = com.mushroom.stockkeeper.model.InventoryStatus.ALLOCATED, "
+            + "u.salesOrder = :order, u.soldPrice = :price, u.version = u.version + 1 "
+            + "WHERE u.id = :id AND u.version = :version "
+            + "AND EXISTS (SELECT o.id FROM SalesOrder o WHERE o = :order "
+            + "AND o.status NOT IN (com.mushroom.stockkeeper.model.SalesOrderStatus.INVOICED, com.mushroom.stockkeeper.model.SalesOrderStatus.CANCELLED)) "
+            + "AND EXISTS (SELECT b.id FROM HarvestBatch b WHERE b = u.batch AND b.deletionStartedAt IS NULL "
+            + "AND (b.expiryDate IS NULL OR b.expiryDate >= :today))")
+    int claim(@org.springframework.data.repository.query.Param("id") Long id,
+            @org.springframework.data.repository.query.Param("version") Long version,
+            @org.springframework.data.repository.query.Param("order") com.mushroom.stockkeeper.model.SalesOrder order,
+            @org.springframework.data.repository.query.Param("price") java.math.BigDecimal price,
+            @org.springframework.data.repository.query.Param("today") java.time.LocalDate today);
+
+    // Typeahead for the picking page: AVAILABLE units whose uuid starts with a
+    // prefix, keyset-paged by id (id > afterId), as projections. One query per
+    // filter so each can use its index.
+    String SEARCH_AVAILABLE = "SELECT new com.mushroom.stockkeeper.dto.PickedUnit(u.id, u.uuid, u.batch.product.name) "
+            + "FROM InventoryUnit u WHERE u.status = com.mushroom.stockkeeper.model.InventoryStatus.AVAILABLE "
+            + "AND u.uuid LIKE :prefix ESCAPE '\\' AND u.id > :afterId ";
+
+    @org.springframework.data.jpa.repository.Query(SEARCH_AVAILABLE + "ORDER BY u.id")
+    java.util.List<com.mushroom.stockkeeper.dto.PickedUnit> searchAvailable(
+            @org.springframework.data.repository.query.Param("prefix") String prefix,
+            @org.springframework.data.repository.query.Param("afterId") long afterId,
+            org.springframework.data.domain.Limit limit);
+
+    @org.springframework.data.jpa.repository.Query(SEARCH_AVAILABLE + "AND u.batch.id = :batchId ORDER BY u.id")
+    java.util.List<com.mushroom.stockkeeper.dto.PickedUnit> searchAvailableInBatch(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("prefix") String prefix,
+            @org.springframework.data.repository.query.Param("afterId") long afterId,
+            org.springframework.data.domain.Limit limit);
+
+    @org.springframework.data.jpa.repository.Query(SEARCH_AVAILABLE + "AND u.batch.product.id = :productId ORDER BY u.id")
+    java.util.List<com.mushroom.stockkeeper.dto.PickedUnit> searchAvailableOfProduct(
+            @org.springframework.data.repository.query.Param("productId") Long productId,
+            @org.springframework.data.repository.query.Param("prefix") String prefix,
+            @org.springframework.data.repository.query.Param("afterId") long afterId,
+            org.springframework.data.domain.Limit limit);
+
+    default java.util.List<com.mushroom.stockkeeper.dto.PickedUnit> searchAvailable(Long productId, Long batchId,
+            String uuidPrefix, long afterId, int limit) {
+        // LIKE wildcards typed by the user are taken literally
+        String prefix = uuidPrefix.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+        org.springframework.data.domain.Limit l = org.springframework.data.domain.Limit.of(limit);
+        if (batchId != null) {
+            return searchAvailableInBatch(batchId, prefix, afterId, l);
+        }
+        return productId != null ? searchAvailableOfProduct(productId, prefix, afterId, l)
+                : searchAvailable(prefix, afterId, l);
+    }
+
+    // Order summary in one aggregate: [productId, productName, count, unitPrice,
+    // discountPercentage, subtotal] per product of the order. Units of one
+    // product can carry different prices (e.g. scanned after a price change),
+    // so the subtotal is their sum; unitPrice is only shown.
+    @org.springframework.data.jpa.repository.Query("SELECT p.id, p.name, COUNT(u), MIN(u.soldPrice), o.discountPercentage, "
+            + "SUM(u.soldPrice) "
+            + "FROM InventoryUnit u JOIN u.salesOrder o JOIN u.batch b JOIN b.product p WHERE o.id = :orderId "
+            + "GROUP BY p.id, p.name, o.discountPercentage ORDER BY p.name")
+    java.util.List<Object[]> summarizeOrder(@org.springframework.data.repository.query.Param("orderId") Long orderId);
+
+    @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.PickedUnit(u.id, u.uuid, u.batch.product.name) "
+            + "FROM InventoryUnit u WHERE u.uuid = :uuid")
+    Optional<com.mushroom.stockkeeper.dto.PickedUnit> findPickedUnitByUuid(
+            @org.springframework.data.repository.query.Param("uuid") String uuid);
+
+    @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.PickedUnit(u.id, u.uuid, u.batch.product.name) "
+            + "FROM InventoryUnit u WHERE u.batch.id = :batchId AND u.seq = :seq")
+    Optional<com.mushroom.stockkeeper.dto.PickedUnit> findPickedUnitByBatchIdAndSeq(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("seq") Integer seq);
+
+    default Optional<com.mushroom.stockkeeper.dto.PickedUnit> findPickedUnit(com.mushroom.stockkeeper.util.UnitCode code) {
+        return code.isCompact() ? findPickedUnitByBatchIdAndSeq(code.batchId(), code.seq())
+                : findPickedUnitByUuid(code.uuid());
+    }
+
+    // Keyset pages of a batch's units ordered by seq (seq > afterSeq), as
+    // projections. Unfiltered pages walk idx_unit_batch_seq, status-filtered
+    // pages idx_unit_batch_status_seq, so neither sorts. seq is NOT NULL, so no
+    // unit falls outside seq > afterSeq.
+    @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.BatchUnitRow(u.id, u.uuid, u.seq, u.status, u.soldPrice) "
+            + "FROM InventoryUnit u WHERE u.batch.id = :batchId AND u.seq > :afterSeq ORDER BY u.seq")
+    java.util.List<com.mushroom.stockkeeper.dto.BatchUnitRow> findUnitRows(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("afterSeq") int afterSeq,
+            org.springframework.data.domain.Limit limit);
+
+    @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.BatchUnitRow(u.id, u.uuid, u.seq, u.status, u.soldPrice) "
+            + "FROM InventoryUnit u WHERE u.batch.id = :batchId AND u.status = :status AND u.seq > :afterSeq ORDER BY u.seq")
+    java.util.List<com.mushroom.stockkeeper.dto.BatchUnitRow> findUnitRowsByStatus(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("status") com.mushroom.stockkeeper.model.InventoryStatus status,
+            @org.springframework.data.repository.query.Param("afterSeq") int afterSeq,
+            org.springframework.data.domain.Limit limit);
+
+    // Keyset pages of labels for seq in (afterSeq, toSeq], on idx_unit_batch_seq
+    @org.springframework.data.jpa.repository.Query("SELECT new com.mushroom.stockkeeper.dto.LabelRow(u.id, u.seq, u.uuid, u.qrCodeContent) "
+            + "FROM InventoryUnit u WHERE u.batch.id = :batchId AND u.seq > :afterSeq AND u.seq <= :toSeq ORDER BY u.seq")
+    java.util.List<com.mushroom.stockkeeper.dto.LabelRow> findLabelRows(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("afterSeq") int afterSeq,
+            @org.springframework.data.repository.query.Param("toSeq") int toSeq,
+            org.springframework.data.domain.Limit limit);
+
+    // Authoritative per-status counts, used to (re)build BatchStockCounter rows
+    @org.springframework.data.jpa.repository.Query("SELECT u.status, COUNT(u) FROM InventoryUnit u WHERE u.batch.id = :batchId GROUP BY u.status")
+    java.util.List<Object[]> countByStatusForBatch(
+            @org.springframework.data.repository.query.Param("batchId") Long batchId);
+
+    // Set-based status change for a whole batch; bumps version so concurrent
+    // optimistic updates of the same units fail instead of overwriting it.
+    // Changes nothing once the batch is marked for deletion.
+    @org.springframework.data.jpa.repository.Modifying
+    @org.springframework.data.jpa.repository.Query("UPDATE InventoryUnit u SET u.status = :to, u.version = u.version + 1 "
+            + "WHERE u.batch.id = :batchId AND u.status = :from AND EXISTS (SELECT b.id FROM HarvestBatch b "
+            + "WHERE b.id = :batchId AND b.deletionStartedAt IS NULL)")
+    int updateStatusForBatch(@org.springframework.data.repository.query.Param("batchId") Long batchId,
+            @org.springframework.data.repository.query.Param("from") com.mushroom.stockkeeper.model.InventoryStatus from,
+            @org.springframework.data.repository.query.Param("to") com.mushroom.stockkeeper.model.InventoryStatus to);
+
     long countBySalesOrderCustomerId(Long customerId);
 
     long countBySalesOrderCustomerIdAndStatus(Long customerId, com.mushroom.stockkeeper.model.InventoryStatus status);
@@ -8,6 +8,9 @@ import org.springframework.security.core.context.SecurityContextHolder;
 @Service
 public class AuditService {
 
+    // Length of sk_audit_logs.details (AuditLog.details)
+    private static final int MAX_DETAILS = 1000;
+
     private final AuditLogRepository auditLogRepository;
 
     public AuditService(AuditLogRepository auditLogRepository) {
@@ -18,7 +21,9 @@ public class AuditService {
         try {
             AuditLog log = new AuditLog();
             log.setAction(action);
-            log.setDetails(details);
+            // Long summaries (e.g. batch lists) are cut rather than failing the insert
+            log.setDetails(details != null && details.length() > MAX_DETAILS
+                    ? details.substring(0, MAX_DETAILS - 4) + " ..." : details);
 
             // Get Username
             var auth = SecurityContextHolder.getContext().getAuthentication();
@@ -0,0 +1,167 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.BatchJobProgress;
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Creates large batches in the background: the batch row is committed
+// immediately and units are inserted in chunks, each in its own transaction,
+// so the request thread and its DB connection are released straight away.
+// Progress is kept in memory; a batch whose job died with the server shows up
+// as incomplete (counter total < totalUnits) and can be resumed.
+@Service
+public class BatchCreationJobService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BatchCreationJobService.class);
+
+    // Units per transaction
+    public static final int CHUNK_SIZE = 5000;
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private static final class Job {
+        final int total;
+        final AtomicInteger created;
+        volatile State state = State.RUNNING;
+        volatile String error;
+        volatile LocalDateTime finishedAt;
+
+        Job(int total, int created) {
+            this.total = total;
+            this.created = new AtomicInteger(created);
+        }
+    }
+
+    private final BatchService batchService;
+    private final HarvestBatchRepository batchRepository;
+    private final InventoryUnitRepository unitRepository;
+    private final AuditService auditService;
+    private final BatchDeletionService deletionService;
+    private final int asyncThreshold;
+
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BatchCreationJobService(BatchService batchService, HarvestBatchRepository batchRepository,
+            InventoryUnitRepository unitRepository, AuditService auditService, BatchDeletionService deletionService,
+            @Value("${stockkeeper.batch.async-threshold:5000}") int asyncThreshold) {
+        this.batchService = batchService;
+        this.batchRepository = batchRepository;
+        this.unitRepository = unitRepository;
+        this.auditService = auditService;
+        this.deletionService = deletionService;
+        this.asyncThreshold = asyncThreshold;
+    }
+
+    // Batches above the threshold are created by a background job
+    public boolean shouldRunAsync(int quantity) {
+        return quantity > asyncThreshold;
+    }
+
+    public HarvestBatch start(Product product, int quantity, LocalDate batchDate) {
+        HarvestBatch batch = batchService.createBatchHeader(product, quantity, batchDate);
+        if (deletionService.startCreating(batch.getId())) {
+            submit(batch, 0);
+        }
+        return batch;
+    }
+
+    // Continues an interrupted job after the last sequence number created.
+    // Chunks commit in order, so units 1..max(seq) were all created (some may
+    // since be gone, e.g. by a delete, which is why the count is not used).
+    public void resume(Long batchId) throws Exception {
+        HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+        if (isRunning(batchId)) {
+            throw new Exception("Units for this batch are already being created.");
+        }
+        Integer lastSeq = unitRepository.findMaxSeqByBatchId(batchId);
+        int existing = lastSeq != null ? lastSeq : 0;
+        if (existing >= batch.getTotalUnits()) {
+            throw new Exception("Batch already has all " + batch.getTotalUnits() + " units.");
+        }
+        // Checked and registered atomically with BatchDeletionService.begin
+        if (!deletionService.startCreating(batchId)) {
+            throw new Exception("Batch is being deleted.");
+        }
+        submit(batch, existing);
+    }
+
+    public boolean isRunning(Long batchId) {
+        Job job = jobs.get(batchId);
+        return job != null && job.state == State.RUNNING;
+    }
+
+    public Optional<BatchJobProgress> getProgress(Long batchId) {
+        Job job = jobs.get(batchId);
+        if (job == null) {
+            return Optional.empty();
+        }
+        int created = job.created.get();
+        int percent = job.total == 0 ? 100 : (int) (created * 100L / job.total);
+        return Optional.of(new BatchJobProgress(batchId, job.state.name(), created, job.total, percent, job.error));
+    }
+
+    // Called once deletionService.startCreating has registered the batch; the
+    // registration ends with the job
+    private void submit(HarvestBatch batch, int alreadyCreated) {
+        evictFinished();
+        Job job = new Job(batch.getTotalUnits(), alreadyCreated);
+        // A finished job for the same batch is replaced; a running one is left alone
+        Job registered = jobs.merge(batch.getId(), job, (old, created) -> old.state == State.RUNNING ? old : created);
+        if (registered == job) {
+            executor.submit(() -> run(batch.getId(), batch.getBatchCode(), job));
+        } else {
+            deletionService.finishCreating(batch.getId());
+        }
+    }
+
+    private void run(Long batchId, String batchCode, Job job) {
+        long started = System.currentTimeMillis();
+        try {
+            for (int from = job.created.get() + 1; from <= job.total; from += CHUNK_SIZE) {
+                int to = Math.min(from + CHUNK_SIZE - 1, job.total);
+                batchService.appendUnits(batchId, batchCode, from, to);
+                job.created.set(to);
+            }
+            job.state = State.COMPLETED;
+            logger.info("Created {} units for batch {} in {} ms", job.total, batchCode,
+                    System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            job.error = e.getMessage();
+            job.state = State.FAILED;
+            logger.error("Unit creation for batch {} failed after {} units", batchCode, job.created.get(), e);
+            auditService.log("BATCH_JOB_FAILED", "Batch " + batchCode + " stopped at " + job.created.get()
+                    + "/" + job.total + " units");
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+            deletionService.finishCreating(batchId);
+        }
+    }
+
+    // Finished jobs are only kept long enough for the UI to pick up the result
+    private void evictFinished() {
+        LocalDateTime cutoff = LocalDateTime.now().minusHours(1);
+        jobs.values().removeIf(j -> j.finishedAt != null && j.finishedAt.isBefore(cutoff));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
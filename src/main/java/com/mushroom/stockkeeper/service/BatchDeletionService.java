@@ -0,0 +1,164 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.InventoryStatus;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+// Deletes a batch in three steps, each committed separately:
+//   1. begin:  check no unit was used and mark the batch (deletionStartedAt)
+//   2. purge:  DELETE ... LIMIT n of its AVAILABLE units, one transaction per chunk
+//   3. finish: remove the counter and the batch row
+// No unit entities are loaded and locks are only held for one chunk at a time.
+// A marked batch cannot be allocated from, and an interrupted delete is
+// resumed at startup or by deleting the batch again.
+@Service
+public class BatchDeletionService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BatchDeletionService.class);
+
+    // Units per DELETE statement / transaction
+    public static final int CHUNK_SIZE = 1000;
+
+    private final HarvestBatchRepository batchRepository;
+    private final InventoryUnitRepository unitRepository;
+    private final BatchStockCounterService counterService;
+    private final AuditService auditService;
+    private final LabelArtifactStore artifactStore;
+    private final TransactionTemplate transactionTemplate;
+
+    // Batches a BatchCreationJobService job is adding units to (with the number
+    // of registrations not yet finished). Registering a
+    // job and marking a batch for deletion both happen under this object's
+    // lock, so a delete never starts while units are being created and no job
+    // starts on a batch being deleted.
+    private final Map<Long, Integer> creating = new HashMap<>();
+
+    public BatchDeletionService(HarvestBatchRepository batchRepository, InventoryUnitRepository unitRepository,
+            BatchStockCounterService counterService, AuditService auditService,
+            LabelArtifactStore artifactStore, PlatformTransactionManager transactionManager) {
+        this.batchRepository = batchRepository;
+        this.unitRepository = unitRepository;
+        this.counterService = counterService;
+        this.auditService = auditService;
+        this.artifactStore = artifactStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public void delete(Long batchId) throws Exception {
+        begin(batchId);
+        purge(batchId);
+    }
+
+    // False when the batch is being deleted; the job must not run then
+    public synchronized boolean startCreating(Long batchId) {
+        HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+        if (batch.getDeletionStartedAt() != null) {
+            return false;
+        }
+        creating.merge(batchId, 1, Integer::sum);
+        return true;
+    }
+
+    public synchronized void finishCreating(Long batchId) {
+        creating.computeIfPresent(batchId, (k, n) -> n > 1 ? n - 1 : null);
+    }
+
+    // Commits the mark before the lock is released
+    private synchronized void begin(Long batchId) throws Exception {
+        if (creating.containsKey(batchId)) {
+            throw new Exception("Units for this batch are still being created.");
+        }
+        String error = transactionTemplate.execute(status -> {
+            HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+            if (batch.getDeletionStartedAt() != null) {
+                return null; // Resuming an interrupted delete, already checked
+            }
+
+            // Check for usage (O(1) counter lookup)
+            long usedUnits = counterService.get(batchId).getUsed();
+
+            // Deletion is irreversible, so confirm against the units table in case the
+            // counters have drifted since the last reconcile.
+            if (usedUnits == 0) {
+                usedUnits = unitRepository.countByBatchIdAndStatusNot(batchId, InventoryStatus.AVAILABLE);
+            }
+
+            if (usedUnits > 0) {
+                return "Cannot delete batch. " + usedUnits + " units are Sold or allocated.";
+            }
+
+            batch.setDeletionStartedAt(LocalDateTime.now());
+            batchRepository.save(batch);
+            return null;
+        });
+        if (error != null) {
+            throw new Exception(error);
+        }
+    }
+
+    private void purge(Long batchId) throws Exception {
+        long started = System.currentTimeMillis();
+        long deleted = 0;
+        int chunk;
+        do {
+            chunk = transactionTemplate.execute(status -> {
+                int count = unitRepository.deleteAvailableUnitsChunk(batchId, CHUNK_SIZE);
+                counterService.addAvailable(batchId, -count);
+                return count;
+            });
+            deleted += chunk;
+        } while (chunk > 0);
+
+        long deletedUnits = deleted;
+        String error = transactionTemplate.execute(status -> {
+            HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+            // Anything left was allocated (or spoiled) before the batch was marked.
+            // The batch is kept with those units and unmarked, so it can be sold
+            // from and deleted again later instead of staying half-deleted.
+            long remaining = unitRepository.countByBatchId(batchId);
+            if (remaining > 0) {
+                batch.setDeletionStartedAt(null);
+                batchRepository.save(batch);
+                auditService.log("DELETE_BATCH_BLOCKED", "Batch " + batchId + " (" + batch.getBatchCode() + "): "
+                        + deletedUnits + " available units deleted, " + remaining + " units kept");
+                return "Cannot delete batch. " + remaining + " units are Sold or allocated ("
+                        + deletedUnits + " available units were deleted).";
+            }
+            counterService.remove(batchId);
+
+            // Audit
+            auditService.log("DELETE_BATCH", "Deleted Batch " + batchId + " (" + batch.getBatchCode() + ")");
+
+            batchRepository.delete(batch);
+            return null;
+        });
+        if (error != null) {
+            throw new Exception(error);
+        }
+        artifactStore.evict(batchId);
+        logger.info("Deleted batch {} ({} units) in {} ms", batchId, deleted, System.currentTimeMillis() - started);
+    }
+
+    // Finishes deletes interrupted by a restart
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumePending() {
+        for (Long batchId : batchRepository.findIdsPendingDeletion()) {
+            try {
+                logger.info("Resuming deletion of batch {}", batchId);
+                purge(batchId);
+            } catch (Exception e) {
+                logger.error("Failed to resume deletion of batch {}", batchId, e);
+            }
+        }
+    }
+}
@@ -11,29 +11,50 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
-import java.util.stream.IntStream;
 
 @Service
 public class BatchService {
 
+    public static final int MAX_UNITS_PER_BATCH = 50000;
+
+    // Last timestamp used for a batch code suffix, so batches created within
+    // the same millisecond (e.g. CSV import) still get distinct codes
+    private final java.util.concurrent.atomic.AtomicLong lastCodeStamp = new java.util.concurrent.atomic.AtomicLong();
+
     private final HarvestBatchRepository batchRepository;
     private final InventoryUnitRepository unitRepository;
     private final AuditService auditService;
+    private final BatchStockCounterService counterService;
+    private final BatchDeletionService deletionService;
 
     public BatchService(HarvestBatchRepository batchRepository, InventoryUnitRepository unitRepository,
-            AuditService auditService) {
+            AuditService auditService, BatchStockCounterService counterService,
+            BatchDeletionService deletionService) {
         this.batchRepository = batchRepository;
         this.unitRepository = unitRepository;
         this.auditService = auditService;
+        this.counterService = counterService;
+        this.deletionService = deletionService;
     }
 
     @Transactional
     public HarvestBatch createBatch(Product product, int quantity, LocalDate batchDate) {
+        HarvestBatch savedBatch = createBatchHeader(product, quantity, batchDate);
+        appendUnits(savedBatch.getId(), savedBatch.getBatchCode(), 1, quantity);
+        return savedBatch;
+    }
+
+    // Validates and saves the batch row without any units. Units are added with
+    // appendUnits, either in the same transaction (createBatch) or in chunks by
+    // BatchCreationJobService.
+    @Transactional
+    public HarvestBatch createBatchHeader(Product product, int quantity, LocalDate batchDate) {
         if (quantity <= 0) {
             throw new IllegalArgumentException("Quantity must be positive");
         }
-        if (quantity > 5000) {
-            throw new IllegalArgumentException("Batch size limit exceeded. Max 5000 units per batch.");
+        if (quantity > MAX_UNITS_PER_BATCH) {
+            throw new IllegalArgumentException(
+                    "Batch size limit exceeded. Max " + MAX_UNITS_PER_BATCH + " units per batch.");
         }
         // Create Batch
         HarvestBatch batch = new HarvestBatch();
@@ -56,62 +77,38 @@ public class BatchService {
         // e.g., B-20231222-1703239999
         // This avoids race conditions with count() and unique constraint violations
         String dateStr = batch.getBatchDate().format(DateTimeFormatter.BASIC_ISO_DATE);
-        String uniqueSuffix = String.valueOf(System.currentTimeMillis()).substring(6); // shorter suffix
+        long stamp = lastCodeStamp.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+        String uniqueSuffix = String.valueOf(stamp).substring(6); // shorter suffix
         String batchCode = "B-" + dateStr + "-" + uniqueSuffix;
         batch.setBatchCode(batchCode);
 
         HarvestBatch savedBatch = batchRepository.save(batch);
-
-        // Generate Inventory Units
-        java.util.List<InventoryUnit> unitsToSave = new java.util.ArrayList<>(quantity);
-        IntStream.range(0, quantity).forEach(i -> {
-            InventoryUnit unit = new InventoryUnit();
-            unit.setBatch(savedBatch);
-            unit.setStatus(InventoryStatus.AVAILABLE);
-
-            // Sequential UUID: BatchCode-Sequence
-            // e.g. B-20231219-1-1, B-20231219-1-2
-            String uuid = savedBatch.getBatchCode() + "-" + (i + 1);
-            unit.setUuid(uuid);
-
-            // QR Content: JSON-like or simple pipe sep?
-            // "ID:UUID|BATCH:CODE|PROD:SKU"
-            String qrContent = "U:" + uuid; // Keep it short for better scanning
-            unit.setQrCodeContent(qrContent);
-
-            unitsToSave.add(unit);
-        });
-
-        unitRepository.saveAll(unitsToSave);
+        counterService.initialize(savedBatch.getId(), 0);
 
         return savedBatch;
     }
 
+    // Generate Inventory Units fromSeq..toSeq (inclusive)
+    // Bulk JDBC insert: one batched round trip per 1000 units instead of one
+    // INSERT per entity (IDENTITY ids disable Hibernate insert batching).
     @Transactional
+    public void appendUnits(Long batchId, String batchCode, int fromSeq, int toSeq) {
+        int inserted = unitRepository.insertAvailableUnits(batchId, batchCode, fromSeq, toSeq);
+        counterService.addAvailable(batchId, inserted);
+    }
+
+    // Not transactional: the units are deleted in chunks, each committed separately
     @org.springframework.security.access.prepost.PreAuthorize("hasRole('ADMIN')")
     public void deleteBatch(Long batchId) throws Exception {
-        HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
-
-        // Check for usage (Optimized Query)
-        long usedUnits = unitRepository.countByBatchIdAndStatusNot(batchId, InventoryStatus.AVAILABLE);
-
-        if (usedUnits > 0) {
-            throw new Exception("Cannot delete batch. " + usedUnits + " units are Sold or allocated.");
-        }
-
-        // Delete all units (Optimized Query)
-        unitRepository.deleteByBatchId(batchId);
-
-        // Audit
-        auditService.log("DELETE_BATCH", "Deleted Batch " + batchId + " (" + batch.getBatchCode() + ")");
-
-        // Delete batch
-        batchRepository.delete(batch);
+        deletionService.delete(batchId);
     }
 
     @Transactional
     public void updateBatch(Long batchId, LocalDate newDate) throws Exception {
         HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+        if (batch.getDeletionStartedAt() != null) {
+            throw new Exception("Batch " + batch.getBatchCode() + " is being deleted.");
+        }
 
         // 1. Validate Future Date (Allow tomorrow)
         if (newDate.isAfter(LocalDate.now().plusDays(1))) {
@@ -119,7 +116,7 @@ public class BatchService {
         }
 
         // 2. Check Integrity: Cannot update if items are sold/returned
-        long usedUnits = unitRepository.countByBatchIdAndStatusNot(batchId, InventoryStatus.AVAILABLE);
+        long usedUnits = counterService.get(batchId).getUsed();
         if (usedUnits > 0) {
             throw new Exception(
                     "Cannot update batch date. " + usedUnits + " units have already been processed (Sold/Spoiled).");
@@ -134,6 +131,8 @@ public class BatchService {
         }
 
         batchRepository.save(batch);
+        // Expiry moved, so the batch's position in the FEFO index changes
+        counterService.refreshIndex(batchId);
 
         auditService.log("UPDATE_BATCH",
                 "Updated Batch " + batch.getBatchCode() + " Date from " + oldDate + " to " + newDate);
@@ -145,6 +144,11 @@ public class BatchService {
         if (unit.getStatus() != InventoryStatus.AVAILABLE) {
             throw new IllegalStateException("Only available units can be marked as spoiled.");
         }
+        // Its AVAILABLE units are being purged
+        if (unit.getBatch().getDeletionStartedAt() != null) {
+            throw new IllegalStateException("Unit " + unit.getUuid() + " belongs to a batch that is being deleted.");
+        }
+        counterService.record(unit.getBatch().getId(), InventoryStatus.AVAILABLE, InventoryStatus.SPOILED);
         unit.setStatus(InventoryStatus.SPOILED);
         unitRepository.save(unit);
         auditService.log("UNIT_SPOILED", "Marked Unit " + unit.getUuid() + " as SPOILED");
@@ -0,0 +1,236 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.BatchStockCounter;
+import com.mushroom.stockkeeper.model.InventoryStatus;
+import com.mushroom.stockkeeper.model.InventoryUnit;
+import com.mushroom.stockkeeper.repository.BatchStockCounterRepository;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+public class BatchStockCounterService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(BatchStockCounterService.class);
+
+    private final BatchStockCounterRepository counterRepository;
+    private final InventoryUnitRepository unitRepository;
+    private final HarvestBatchRepository batchRepository;
+    private final AuditService auditService;
+    private final FefoIndexService fefoIndex;
+    private final TransactionTemplate transactionTemplate;
+    // For the lazy counter INSERT: a lost race must not abort the caller's transaction
+    private final TransactionTemplate newTransaction;
+
+    public BatchStockCounterService(BatchStockCounterRepository counterRepository,
+            InventoryUnitRepository unitRepository, HarvestBatchRepository batchRepository,
+            AuditService auditService, FefoIndexService fefoIndex, PlatformTransactionManager transactionManager) {
+        this.counterRepository = counterRepository;
+        this.unitRepository = unitRepository;
+        this.batchRepository = batchRepository;
+        this.auditService = auditService;
+        this.fefoIndex = fefoIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransaction = new TransactionTemplate(transactionManager);
+        this.newTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    // The FEFO index must only see committed changes
+    private void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Transactional
+    public void initialize(Long batchId, long availableUnits) {
+        BatchStockCounter counter = new BatchStockCounter();
+        counter.setBatchId(batchId);
+        counter.setAvailable(availableUnits);
+        counterRepository.insert(counter);
+        afterCommit(() -> fefoIndex.onBatchChanged(batchId));
+    }
+
+    // AVAILABLE units added to (or, with a negative count, deleted from) a batch
+    @Transactional
+    public void addAvailable(Long batchId, long count) {
+        counterRepository.applyDelta(batchId, count, 0, 0, 0, 0);
+        afterCommit(() -> fefoIndex.onAvailableChanged(batchId, count));
+    }
+
+    @Transactional
+    public void record(Long batchId, InventoryStatus from, InventoryStatus to) {
+        record(batchId, from, to, 1);
+    }
+
+    @Transactional
+    public void record(Long batchId, InventoryStatus from, InventoryStatus to, long count) {
+        if (from == to || count == 0) {
+            return;
+        }
+        long[] delta = new long[InventoryStatus.values().length];
+        delta[from.ordinal()] -= count;
+        delta[to.ordinal()] += count;
+
+        int updated = counterRepository.applyDelta(batchId,
+                delta[InventoryStatus.AVAILABLE.ordinal()],
+                delta[InventoryStatus.ALLOCATED.ordinal()],
+                delta[InventoryStatus.SOLD.ordinal()],
+                delta[InventoryStatus.RETURNED.ordinal()],
+                delta[InventoryStatus.SPOILED.ordinal()]);
+
+        // No row yet (batch created before counters existed). It is built from the
+        // units table on first read or by the nightly reconcile, so nothing to do.
+        if (updated == 0) {
+            logger.debug("No stock counter for batch {}, skipping {} -> {}", batchId, from, to);
+        }
+
+        long availableDelta = delta[InventoryStatus.AVAILABLE.ordinal()];
+        if (availableDelta != 0) {
+            afterCommit(() -> fefoIndex.onAvailableChanged(batchId, availableDelta));
+        }
+    }
+
+    // Records the move of every unit to 'to', collapsed to one counter update per
+    // (batch, current status). Call BEFORE changing the units' status.
+    @Transactional
+    public void recordAll(Collection<InventoryUnit> units, InventoryStatus to) {
+        Map<Long, Map<InventoryStatus, Long>> grouped = units.stream()
+                .filter(u -> u.getStatus() != to)
+                .collect(Collectors.groupingBy(u -> u.getBatch().getId(),
+                        Collectors.groupingBy(InventoryUnit::getStatus, Collectors.counting())));
+
+        grouped.forEach((batchId, byStatus) -> byStatus
+                .forEach((from, count) -> record(batchId, from, to, count)));
+    }
+
+    @Transactional
+    public BatchStockCounter get(Long batchId) {
+        return counterRepository.findSnapshot(batchId).orElseGet(() -> rebuild(batchId));
+    }
+
+    @Transactional
+    public Map<Long, BatchStockCounter> getAll(Collection<Long> batchIds) {
+        Map<Long, BatchStockCounter> counters = counterRepository.findSnapshots(batchIds).stream()
+                .collect(Collectors.toMap(BatchStockCounter::getBatchId, c -> c));
+        for (Long batchId : batchIds) {
+            counters.computeIfAbsent(batchId, this::rebuild);
+        }
+        return counters;
+    }
+
+    // Re-reads the batch into the FEFO index after commit (e.g. its expiry changed)
+    public void refreshIndex(Long batchId) {
+        afterCommit(() -> fefoIndex.onBatchChanged(batchId));
+    }
+
+    @Transactional
+    public void remove(Long batchId) {
+        counterRepository.deleteByBatchIds(List.of(batchId));
+        afterCommit(() -> fefoIndex.onBatchChanged(batchId));
+    }
+
+    // Builds the missing counter of a batch from its units. Two first reads of
+    // the same batch may race here; the loser's INSERT fails on the key and it
+    // reads the winner's row instead.
+    private BatchStockCounter rebuild(Long batchId) {
+        try {
+            newTransaction.executeWithoutResult(status -> {
+                counterRepository.insert(count(batchId));
+                afterCommit(() -> fefoIndex.onBatchChanged(batchId));
+            });
+        } catch (DataIntegrityViolationException e) {
+            logger.debug("Stock counter of batch {} was built concurrently", batchId);
+        }
+        return counterRepository.findSnapshot(batchId).orElseThrow();
+    }
+
+    private BatchStockCounter count(Long batchId) {
+        BatchStockCounter counter = new BatchStockCounter();
+        counter.setBatchId(batchId);
+        for (Object[] row : unitRepository.countByStatusForBatch(batchId)) {
+            counter.set((InventoryStatus) row[0], (Long) row[1]);
+        }
+        counter.setReconciledAt(LocalDateTime.now());
+        return counter;
+    }
+
+    // Nightly full rebuild from sk_inventory_units. Fixes any drift (e.g. from
+    // direct DB edits) and reports it in the audit log. Returns the number of
+    // batches whose counters were wrong or missing.
+    //
+    // Each batch is recounted in its own transaction while holding its counter
+    // row. Every status change takes that row (applyDelta) before it commits,
+    // so none can commit between the count and the overwrite and be lost.
+    @Scheduled(cron = "0 30 2 * * *")
+    public int reconcile() {
+        List<Long> batchIds = batchRepository.findAllIds();
+        List<String> drift = new ArrayList<>();
+        for (Long batchId : batchIds) {
+            try {
+                String diff = transactionTemplate.execute(status -> reconcile(batchId));
+                if (diff != null) {
+                    drift.add("batch " + batchId + " (" + diff + ")");
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Missing counter built by a first read meanwhile, from the same units
+                logger.debug("Stock counter of batch {} was built concurrently", batchId);
+            }
+        }
+
+        // Counters left over for batches that no longer exist
+        transactionTemplate.executeWithoutResult(status -> counterRepository.deleteOrphans());
+
+        if (!drift.isEmpty()) {
+            String details = "Stock counter drift in " + drift.size() + " batches: " + String.join(", ", drift);
+            logger.warn(details);
+            auditService.log("STOCK_COUNTER_RECONCILE", details);
+        } else {
+            logger.info("Stock counters reconciled for {} batches, no drift", batchIds.size());
+        }
+        afterCommit(fefoIndex::rebuild);
+        return drift.size();
+    }
+
+    // Returns the drift found in the batch's counter, null when there was none
+    private String reconcile(Long batchId) {
+        boolean exists = counterRepository.lock(batchId).isPresent();
+        BatchStockCounter expected = count(batchId);
+        if (!exists) {
+            counterRepository.insert(expected);
+            return "missing";
+        }
+        BatchStockCounter current = counterRepository.findSnapshot(batchId).orElseThrow();
+        StringBuilder diff = new StringBuilder();
+        for (InventoryStatus status : InventoryStatus.values()) {
+            if (current.get(status) != expected.get(status)) {
+                diff.append(' ').append(status).append(' ').append(current.get(status))
+                        .append("->").append(expected.get(status));
+            }
+        }
+        counterRepository.overwrite(expected);
+        return diff.length() > 0 ? diff.toString().trim() : null;
+    }
+}
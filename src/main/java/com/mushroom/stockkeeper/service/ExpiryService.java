@@ -0,0 +1,82 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.InventoryStatus;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Moves AVAILABLE units of expired batches to SPOILED so they drop out of
+// stock lists and picking. allocateUnit still rejects expired units on its
+// own; this sweep just stops them from showing up as sellable.
+@Service
+public class ExpiryService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ExpiryService.class);
+
+    private final HarvestBatchRepository batchRepository;
+    private final InventoryUnitRepository unitRepository;
+    private final BatchStockCounterService counterService;
+    private final AuditService auditService;
+    private final TransactionTemplate transactionTemplate;
+    private final int graceDays;
+
+    public ExpiryService(HarvestBatchRepository batchRepository, InventoryUnitRepository unitRepository,
+            BatchStockCounterService counterService, AuditService auditService,
+            PlatformTransactionManager transactionManager,
+            @Value("${stockkeeper.expiry.grace-days:0}") int graceDays) {
+        this.batchRepository = batchRepository;
+        this.unitRepository = unitRepository;
+        this.counterService = counterService;
+        this.auditService = auditService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.graceDays = graceDays;
+    }
+
+    // Runs before the stock counter reconcile (02:30). Each batch is one UPDATE
+    // in its own transaction, so a large backlog never holds locks on more than
+    // one batch's units at a time. Returns the number of units expired.
+    @Scheduled(cron = "${stockkeeper.expiry.cron:0 15 2 * * *}")
+    public int expireStock() {
+        // Batches expiring on day D are sellable through D (same rule as
+        // allocateUnit), plus the grace period
+        LocalDate cutoff = LocalDate.now().minusDays(graceDays);
+
+        int totalUnits = 0;
+        List<String> expiredBatches = new ArrayList<>();
+        for (Object[] row : batchRepository.findExpiredWithAvailableUnits(cutoff)) {
+            Long batchId = (Long) row[0];
+            String batchCode = (String) row[1];
+            try {
+                Integer expired = transactionTemplate.execute(status -> {
+                    int count = unitRepository.updateStatusForBatch(batchId, InventoryStatus.AVAILABLE,
+                            InventoryStatus.SPOILED);
+                    counterService.record(batchId, InventoryStatus.AVAILABLE, InventoryStatus.SPOILED, count);
+                    return count;
+                });
+                if (expired != null && expired > 0) {
+                    totalUnits += expired;
+                    expiredBatches.add(batchCode + " (" + expired + ")");
+                }
+            } catch (Exception e) {
+                // Log error but continue with the next batch
+                logger.error("Failed to expire stock for batch {}", batchCode, e);
+            }
+        }
+
+        if (totalUnits > 0) {
+            String details = "Expired " + totalUnits + " units in " + expiredBatches.size() + " batches (grace "
+                    + graceDays + " days): " + String.join(", ", expiredBatches);
+            logger.info(details);
+            auditService.log("STOCK_EXPIRED", details);
+        }
+        return totalUnits;
+    }
+}
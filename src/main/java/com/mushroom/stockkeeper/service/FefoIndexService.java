@@ -0,0 +1,241 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.PickSuggestion;
+import com.mushroom.stockkeeper.model.BatchStockCounter;
+import com.mushroom.stockkeeper.repository.BatchStockCounterRepository;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+// In-memory first-expiry-first-out index: per product, the batches ordered by
+// expiryDate with their live AVAILABLE count. Fed by BatchStockCounterService
+// after each commit, rebuilt at startup and after the nightly reconcile.
+//
+// The counts only decide which batches to look at; the units themselves come
+// from an indexed (batch_id, status, seq) query, so a slightly stale count never
+// suggests a unit that is no longer AVAILABLE.
+@Service
+public class FefoIndexService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(FefoIndexService.class);
+
+    private record Slot(Long batchId, Long productId, LocalDate expiryDate, String batchCode, AtomicLong available) {
+    }
+
+    // Earliest expiry first; batches without an expiry date last
+    private static final Comparator<Slot> FEFO_ORDER = Comparator
+            .comparing(Slot::expiryDate, Comparator.nullsLast(Comparator.naturalOrder()))
+            .thenComparing(Slot::batchId);
+
+    private final HarvestBatchRepository batchRepository;
+    private final BatchStockCounterRepository counterRepository;
+    private final InventoryUnitRepository unitRepository;
+
+    private volatile Map<Long, Slot> slots = new ConcurrentHashMap<>();
+    private volatile Map<Long, NavigableSet<Slot>> byProduct = new ConcurrentHashMap<>();
+    // Batches seen in events but not loaded yet (e.g. just created)
+    private final Set<Long> unresolved = ConcurrentHashMap.newKeySet();
+
+    // The maps and slot sets are changed under this object's lock. A rebuild
+    // reads the database outside it and swaps the maps in under it; batches
+    // changed in between are re-read afterwards instead of trusting either side.
+    private final Object rebuildLock = new Object();
+    private boolean rebuilding;
+    private final Set<Long> changedDuringRebuild = new HashSet<>();
+    // Batches resolvePending is reading; changed ones are read again
+    private final Set<Long> resolving = new HashSet<>();
+
+    public FefoIndexService(HarvestBatchRepository batchRepository, BatchStockCounterRepository counterRepository,
+            InventoryUnitRepository unitRepository) {
+        this.batchRepository = batchRepository;
+        this.counterRepository = counterRepository;
+        this.unitRepository = unitRepository;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (this) {
+                rebuilding = true;
+                changedDuringRebuild.clear();
+            }
+            try {
+                // Read without holding the index lock, so commits are not held up
+                // by the full scan
+                Map<Long, Long> available = counterRepository.findAllSnapshots().stream()
+                        .collect(Collectors.toMap(BatchStockCounter::getBatchId, BatchStockCounter::getAvailable));
+
+                Map<Long, Slot> newSlots = new ConcurrentHashMap<>();
+                Map<Long, NavigableSet<Slot>> newByProduct = new ConcurrentHashMap<>();
+                for (Object[] row : batchRepository.findFefoEntries()) {
+                    Slot slot = toSlot(row, available.getOrDefault((Long) row[0], 0L));
+                    newSlots.put(slot.batchId(), slot);
+                    newByProduct.computeIfAbsent(slot.productId(), k -> new ConcurrentSkipListSet<>(FEFO_ORDER))
+                            .add(slot);
+                }
+                synchronized (this) {
+                    slots = newSlots;
+                    byProduct = newByProduct;
+                    unresolved.clear();
+                    // A change that arrived while reading may or may not be in what
+                    // was read: those batches are re-read with their absolute count
+                    unresolved.addAll(changedDuringRebuild);
+                }
+                logger.info("FEFO index built for {} batches", newSlots.size());
+            } finally {
+                synchronized (this) {
+                    rebuilding = false;
+                    changedDuringRebuild.clear();
+                }
+            }
+        }
+    }
+
+    // Called after commit with the change in a batch's AVAILABLE count
+    public synchronized void onAvailableChanged(Long batchId, long delta) {
+        if (rebuilding) {
+            changedDuringRebuild.add(batchId);
+        }
+        if (resolving.contains(batchId)) {
+            // The count being read may or may not include this change
+            unresolved.add(batchId);
+        }
+        Slot slot = slots.get(batchId);
+        if (slot != null) {
+            slot.available().addAndGet(delta);
+        } else {
+            // Loaded with its absolute count on the next suggest
+            unresolved.add(batchId);
+        }
+    }
+
+    // Called after commit when a batch is deleted or its expiry date changes
+    public synchronized void onBatchChanged(Long batchId) {
+        if (rebuilding) {
+            changedDuringRebuild.add(batchId);
+        }
+        removeSlot(batchId);
+        // Re-read on the next suggest; a deleted batch simply is not found
+        unresolved.add(batchId);
+    }
+
+    // Up to qty AVAILABLE, unexpired units of the product, oldest expiry first
+    public List<PickSuggestion> suggest(Long productId, int qty) {
+        resolvePending();
+
+        List<PickSuggestion> result = new ArrayList<>();
+        NavigableSet<Slot> batches = byProduct.get(productId);
+        if (batches == null || qty <= 0) {
+            return result;
+        }
+
+        LocalDate today = LocalDate.now();
+        Iterator<Slot> candidates = batches.iterator();
+        int remaining = qty;
+        while (remaining > 0 && candidates.hasNext()) {
+            // Take batches in FEFO order until their counts cover what is still
+            // needed and read their units in one query. A count that was too
+            // high leaves a shortfall, filled from the next batches the same way.
+            Map<Long, Slot> round = new LinkedHashMap<>();
+            Map<Long, Integer> limits = new LinkedHashMap<>();
+            long expected = 0;
+            while (expected < remaining && candidates.hasNext()) {
+                Slot slot = candidates.next();
+                long available = slot.available().get();
+                // Same rule as allocateUnit: expired batches cannot be sold
+                if (available <= 0 || (slot.expiryDate() != null && slot.expiryDate().isBefore(today))) {
+                    continue;
+                }
+                round.put(slot.batchId(), slot);
+                limits.put(slot.batchId(), remaining);
+                expected += available;
+            }
+            if (limits.isEmpty()) {
+                break;
+            }
+
+            Map<Long, List<String>> uuids = unitRepository.findAvailableUuids(limits);
+            for (Slot slot : round.values()) {
+                List<String> found = uuids.getOrDefault(slot.batchId(), List.of());
+                if (remaining == 0 || found.isEmpty()) {
+                    continue;
+                }
+                List<String> picked = found.subList(0, Math.min(remaining, found.size()));
+                result.add(new PickSuggestion(slot.batchId(), slot.batchCode(), slot.expiryDate(),
+                        new ArrayList<>(picked)));
+                remaining -= picked.size();
+            }
+        }
+        return result;
+    }
+
+    // Reads the pending batches outside the index lock, like rebuild, so
+    // after-commit updates never wait for these queries
+    private void resolvePending() {
+        List<Long> ids;
+        synchronized (this) {
+            if (unresolved.isEmpty()) {
+                return;
+            }
+            ids = new ArrayList<>(unresolved);
+            unresolved.removeAll(ids);
+            resolving.addAll(ids);
+            if (rebuilding) {
+                // Loaded into the index the rebuild is about to replace
+                changedDuringRebuild.addAll(ids);
+            }
+        }
+
+        try {
+            Map<Long, Long> available = counterRepository.findSnapshots(ids).stream()
+                    .collect(Collectors.toMap(BatchStockCounter::getBatchId, BatchStockCounter::getAvailable));
+            List<Object[]> rows = batchRepository.findFefoEntries(ids);
+            synchronized (this) {
+                // Batches not found any more (deleted) drop out
+                ids.forEach(this::removeSlot);
+                for (Object[] row : rows) {
+                    Slot slot = toSlot(row, available.getOrDefault((Long) row[0], 0L));
+                    slots.put(slot.batchId(), slot);
+                    byProduct.computeIfAbsent(slot.productId(), k -> new ConcurrentSkipListSet<>(FEFO_ORDER))
+                            .add(slot);
+                }
+            }
+        } finally {
+            synchronized (this) {
+                resolving.removeAll(ids);
+            }
+        }
+    }
+
+    // Caller holds the index lock
+    private void removeSlot(Long batchId) {
+        Slot old = slots.remove(batchId);
+        if (old != null) {
+            NavigableSet<Slot> set = byProduct.get(old.productId());
+            if (set != null) {
+                set.remove(old);
+            }
+        }
+    }
+
+    private static Slot toSlot(Object[] row, long available) {
+        return new Slot((Long) row[0], (Long) row[1], (LocalDate) row[2], (String) row[3], new AtomicLong(available));
+    }
+}
@@ -0,0 +1,135 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.HarvestImportResult;
+import com.mushroom.stockkeeper.dto.HarvestImportRow;
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.ProductRepository;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+// Imports end-of-shift harvest logs: one batch per CSV line of
+// sku,quantity[,batchDate]. The input is read line by line, never buffered
+// whole. Each line is created through BatchService.createBatch in its own
+// transaction, so one bad line is reported without rolling back the others.
+// Lines above the async threshold become background jobs, like on the create
+// form; their units are not counted in unitsCreated.
+@Service
+public class HarvestImportService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(HarvestImportService.class);
+
+    private final BatchService batchService;
+    private final BatchCreationJobService jobService;
+    private final ProductRepository productRepository;
+    private final AuditService auditService;
+
+    public HarvestImportService(BatchService batchService, BatchCreationJobService jobService,
+            ProductRepository productRepository, AuditService auditService) {
+        this.batchService = batchService;
+        this.jobService = jobService;
+        this.productRepository = productRepository;
+        this.auditService = auditService;
+    }
+
+    public HarvestImportResult importCsv(Reader csv) throws IOException {
+        long started = System.currentTimeMillis();
+
+        // SKU lookup without a query per line (SKUs are matched case-insensitively)
+        Map<String, Product> productsBySku = productRepository.findAll().stream()
+                .filter(p -> p.getSku() != null)
+                .collect(Collectors.toMap(p -> p.getSku().trim().toUpperCase(), Function.identity(), (a, b) -> a));
+
+        List<HarvestImportRow> rows = new ArrayList<>();
+        int batchesCreated = 0;
+        long unitsCreated = 0;
+
+        BufferedReader reader = new BufferedReader(csv);
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",", -1);
+            for (int i = 0; i < fields.length; i++) {
+                fields[i] = fields[i].trim().replaceAll("^\"|\"$", "");
+            }
+            // Optional header line
+            if (rows.isEmpty() && fields[0].equalsIgnoreCase("sku")) {
+                continue;
+            }
+
+            HarvestImportRow row = importLine(lineNo, fields, productsBySku);
+            rows.add(row);
+            if (row.isOk()) {
+                batchesCreated++;
+                if (!row.background()) {
+                    unitsCreated += row.quantity();
+                }
+            }
+        }
+
+        HarvestImportResult result = new HarvestImportResult(rows, batchesCreated, unitsCreated,
+                System.currentTimeMillis() - started);
+        logger.info("Harvest import: {} batches / {} units created, {} lines failed, {} ms ({} units/s)",
+                batchesCreated, unitsCreated, result.getFailed(), result.elapsedMs(), result.getUnitsPerSecond());
+        if (!rows.isEmpty()) {
+            auditService.log("IMPORT_BATCHES", "Imported " + batchesCreated + " batches (" + unitsCreated
+                    + " units) from CSV, " + result.getFailed() + " lines failed");
+        }
+        return result;
+    }
+
+    private HarvestImportRow importLine(int lineNo, String[] fields, Map<String, Product> productsBySku) {
+        String sku = fields[0];
+        if (fields.length < 2 || sku.isEmpty()) {
+            return new HarvestImportRow(lineNo, sku, null, null, null, false, "Expected sku,quantity[,batchDate]");
+        }
+
+        Integer quantity;
+        try {
+            quantity = Integer.valueOf(fields[1]);
+        } catch (NumberFormatException e) {
+            return new HarvestImportRow(lineNo, sku, null, null, null, false, "Invalid quantity: " + fields[1]);
+        }
+
+        LocalDate batchDate = null;
+        if (fields.length > 2 && !fields[2].isEmpty()) {
+            try {
+                batchDate = LocalDate.parse(fields[2]);
+            } catch (DateTimeParseException e) {
+                return new HarvestImportRow(lineNo, sku, quantity, null, null, false,
+                        "Invalid date (expected YYYY-MM-DD): " + fields[2]);
+            }
+        }
+
+        Product product = productsBySku.get(sku.toUpperCase());
+        if (product == null) {
+            return new HarvestImportRow(lineNo, sku, quantity, batchDate, null, false, "Unknown SKU");
+        }
+
+        try {
+            // Same validation and the same async threshold as the create form
+            boolean background = jobService.shouldRunAsync(quantity);
+            HarvestBatch batch = background
+                    ? jobService.start(product, quantity, batchDate)
+                    : batchService.createBatch(product, quantity, batchDate);
+            return new HarvestImportRow(lineNo, sku, quantity, batch.getBatchDate(), batch.getBatchCode(),
+                    background, null);
+        } catch (Exception e) {
+            return new HarvestImportRow(lineNo, sku, quantity, batchDate, null, false, e.getMessage());
+        }
+    }
+}
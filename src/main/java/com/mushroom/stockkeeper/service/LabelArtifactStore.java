@@ -0,0 +1,123 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.NutritionLineItem;
+import com.mushroom.stockkeeper.model.Product;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// Rendered full-batch label sheets (batches/print) kept on local disk, so a
+// reprint streams a file instead of running Thymeleaf over every unit.
+//
+// Files are named batch-{id}-{fingerprint}-{job}.html, one per print job of
+// the batch (see LabelSheetRenderer). The fingerprint covers
+// everything the sheet shows (label settings, product label data, batch dates,
+// unit count) plus the template itself, so any change simply misses and the
+// sheet is rendered again; older files of the batch are removed on store.
+@Service
+public class LabelArtifactStore {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(LabelArtifactStore.class);
+
+    static final String TEMPLATE = "templates/batches/print.html";
+
+    private final Path dir;
+    private final String templateHash;
+
+    public LabelArtifactStore(
+            @Value("${stockkeeper.labels.artifact-dir:${java.io.tmpdir}/stockkeeper-labels}") Path dir)
+            throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        try (InputStream in = new ClassPathResource(TEMPLATE).getInputStream()) {
+            this.templateHash = DigestUtils.md5DigestAsHex(in);
+        }
+    }
+
+    public String fingerprint(HarvestBatch batch, long unitCount, Map<String, Object> labelSettings) {
+        StringBuilder sb = new StringBuilder(templateHash);
+        // Sorted so the order settings were added in does not matter
+        new TreeMap<>(labelSettings).forEach((k, v) -> sb.append('|').append(k).append('=').append(v));
+
+        sb.append('|').append(batch.getBatchCode())
+                .append('|').append(batch.getBatchDate())
+                .append('|').append(batch.getExpiryDate())
+                .append('|').append(unitCount);
+
+        Product p = batch.getProduct();
+        sb.append('|').append(p.getName())
+                .append('|').append(p.getFssaiLicenseNumber())
+                .append('|').append(p.getMrp())
+                .append('|').append(p.getNetWeight()).append(p.getNetWeightUom())
+                .append('|').append(p.getStorageInstructions())
+                .append('|').append(p.isHasNutritionValues())
+                .append('|').append(p.getNutritionBaseUnitValue()).append(p.getNutritionBaseUnitType());
+        for (NutritionLineItem item : p.getNutritionLineItems()) {
+            sb.append('|').append(item.getComponentName()).append(item.getAmount()).append(item.getMeasurementUnit());
+        }
+        return DigestUtils.md5DigestAsHex(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    public Optional<Path> find(Long batchId, String fingerprint, int job) {
+        Path file = dir.resolve(fileName(batchId, fingerprint, job));
+        return Files.isRegularFile(file) ? Optional.of(file) : Optional.empty();
+    }
+
+    // A sheet is written here first and moved into place by commit, so a
+    // concurrent reader never sees half a sheet
+    public Path newTempFile(Long batchId) throws IOException {
+        return Files.createTempFile(dir, "batch-" + batchId + "-", ".tmp");
+    }
+
+    public Path commit(Long batchId, String fingerprint, int job, Path tmp) throws IOException {
+        Path file = dir.resolve(fileName(batchId, fingerprint, job));
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        deleteOthers(batchId, fingerprint);
+        return file;
+    }
+
+    public Path store(Long batchId, String fingerprint, int job, String html) throws IOException {
+        Path tmp = newTempFile(batchId);
+        try {
+            Files.writeString(tmp, html, StandardCharsets.UTF_8);
+            return commit(batchId, fingerprint, job, tmp);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public void evict(Long batchId) {
+        deleteOthers(batchId, null);
+    }
+
+    // Removes the batch's sheets of any other fingerprint (all, if null)
+    private void deleteOthers(Long batchId, String keepFingerprint) {
+        String keepPrefix = keepFingerprint != null ? "batch-" + batchId + "-" + keepFingerprint + "-" : null;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "batch-" + batchId + "-*.html")) {
+            for (Path f : files) {
+                if (keepPrefix == null || !f.getFileName().toString().startsWith(keepPrefix)) {
+                    Files.deleteIfExists(f);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Could not clean label artifacts of batch {}", batchId, e);
+        }
+    }
+
+    private static String fileName(Long batchId, String fingerprint, int job) {
+        return "batch-" + batchId + "-" + fingerprint + "-" + job + ".html";
+    }
+}
@@ -0,0 +1,95 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.LabelRow;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.context.AbstractContext;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Set;
+
+// Streams batches/print for a seq range: the page around the labels is
+// rendered once, then the "labels" fragment chunk by chunk, each flushed as
+// soon as it is written. Only one chunk of LabelRows is held at a time.
+//
+// Whole batches are split into print jobs of whole sheets, so the browser's
+// print preview never has to lay out thousands of labels at once.
+@Service
+public class LabelSheetRenderer {
+
+    public static final String TEMPLATE = "batches/print";
+
+    // Labels read and rendered per round trip
+    public static final int CHUNK_SIZE = 200;
+
+    // Where the labels go in the page rendered without units
+    static final String STREAM_MARKER = "<!-- label-stream:";
+
+    private final ITemplateEngine templateEngine;
+    private final InventoryUnitRepository unitRepository;
+    private final int maxLabelsPerJob;
+
+    public LabelSheetRenderer(ITemplateEngine templateEngine, InventoryUnitRepository unitRepository,
+            @Value("${stockkeeper.labels.max-labels-per-job:1000}") int maxLabelsPerJob) {
+        this.templateEngine = templateEngine;
+        this.unitRepository = unitRepository;
+        this.maxLabelsPerJob = maxLabelsPerJob;
+    }
+
+    public static int labelsPerSheet(String labelSheetSize) {
+        return switch (labelSheetSize) {
+            case "A4_24" -> 24;
+            case "A4_40" -> 40;
+            default -> 1; // Thermal rolls: one label per page
+        };
+    }
+
+    // Largest whole number of sheets within the configured maximum
+    public int labelsPerJob(String labelSheetSize) {
+        int perSheet = labelsPerSheet(labelSheetSize);
+        return Math.max(1, maxLabelsPerJob / perSheet) * perSheet;
+    }
+
+    // Renders labels with seq in (afterSeq, toSeq]. The context must already
+    // hold batch and the label settings. Everything written to out is also
+    // written to copy when it is not null. Returns the number of labels.
+    public int render(AbstractContext context, Long batchId, int afterSeq, int toSeq, Writer out, Writer copy)
+            throws IOException {
+        context.setVariable("units", List.of());
+        String page = templateEngine.process(TEMPLATE, context);
+        int marker = page.indexOf(STREAM_MARKER);
+        if (marker < 0) {
+            throw new IllegalStateException(TEMPLATE + " has no label stream marker");
+        }
+        write(page.substring(0, marker), out, copy);
+
+        int rendered = 0;
+        List<LabelRow> chunk;
+        do {
+            chunk = unitRepository.findLabelRows(batchId, afterSeq, toSeq, Limit.of(CHUNK_SIZE));
+            if (chunk.isEmpty()) {
+                break;
+            }
+            context.setVariable("units", chunk);
+            write(templateEngine.process(TEMPLATE, Set.of("labels"), context), out, copy);
+            afterSeq = chunk.get(chunk.size() - 1).seq();
+            rendered += chunk.size();
+        } while (chunk.size() == CHUNK_SIZE);
+
+        write(page.substring(marker), out, copy);
+        return rendered;
+    }
+
+    private static void write(String html, Writer out, Writer copy) throws IOException {
+        out.write(html);
+        out.flush();
+        if (copy != null) {
+            copy.write(html);
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.OrderDelta;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+// Live order sessions: every device with an order's picking page open holds a
+// server-sent event stream, and each committed allocation, removal or price
+// change of the order is pushed to all of them as an OrderDelta.
+//
+// Each device gets a small bounded queue drained by its own virtual thread, so
+// a slow phone never holds up the scan that produced the event or the other
+// devices. When a queue overflows, its pending events are dropped for a single
+// "resync" event, after which the device reloads the order.
+@Service
+public class OrderSessionHub {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(OrderSessionHub.class);
+
+    static final int QUEUE_CAPACITY = 32;
+    private static final long HEARTBEAT_SECONDS = 25;
+    // EventSource reconnects by itself when the stream ends
+    private static final long STREAM_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+
+    public static final String RESYNC = "resync";
+
+    private record Event(String type, OrderDelta delta) {
+    }
+
+    private final Map<Long, Set<Subscriber>> sessions = new ConcurrentHashMap<>();
+    // Deltas waiting to be built, per order; only touched inside compute calls
+    private final Map<Long, Queue<Runnable>> publishers = new ConcurrentHashMap<>();
+
+    public SseEmitter subscribe(Long orderId) {
+        SseEmitter emitter = new SseEmitter(STREAM_TIMEOUT_MS);
+        Subscriber subscriber = new Subscriber(orderId, emitter);
+        sessions.computeIfAbsent(orderId, k -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(e -> subscriber.close());
+        subscriber.thread = Thread.ofVirtual().name("order-session-" + orderId).start(subscriber::run);
+        return emitter;
+    }
+
+    public boolean hasSubscribers(Long orderId) {
+        Set<Subscriber> subscribers = sessions.get(orderId);
+        return subscribers != null && !subscribers.isEmpty();
+    }
+
+    public int subscriberCount(Long orderId) {
+        Set<Subscriber> subscribers = sessions.get(orderId);
+        return subscribers != null ? subscribers.size() : 0;
+    }
+
+    public void publish(Long orderId, String type, OrderDelta delta) {
+        Set<Subscriber> subscribers = sessions.get(orderId);
+        if (subscribers == null) {
+            return;
+        }
+        Event event = new Event(type, delta);
+        for (Subscriber s : subscribers) {
+            s.offer(event);
+        }
+    }
+
+    // Publishes once the current transaction commits (at once without one).
+    // The delta is only built when some device is watching the order, and
+    // off the committing thread, so the scan's response is not delayed.
+    public void publishAfterCommit(Long orderId, String type, Supplier<OrderDelta> delta) {
+        Runnable action = () -> {
+            if (!hasSubscribers(orderId)) {
+                return;
+            }
+            submit(orderId, () -> {
+                try {
+                    publish(orderId, type, delta.get());
+                } catch (Exception e) {
+                    logger.warn("Could not publish {} event of order {}", type, orderId, e);
+                }
+            });
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    // One publisher per order: its deltas are built and queued one at a time in
+    // the order their commits handed them over, so a device never applies an
+    // older state after a newer one. The publisher's thread ends once nothing
+    // is pending; the map entry exists exactly while that thread runs.
+    private void submit(Long orderId, Runnable task) {
+        boolean[] started = new boolean[1];
+        publishers.compute(orderId, (k, pending) -> {
+            if (pending == null) {
+                pending = new ArrayDeque<>();
+                started[0] = true;
+            }
+            pending.add(task);
+            return pending;
+        });
+        if (started[0]) {
+            Thread.ofVirtual().name("order-session-publish-" + orderId).start(() -> drain(orderId));
+        }
+    }
+
+    private void drain(Long orderId) {
+        while (true) {
+            Runnable[] next = new Runnable[1];
+            publishers.computeIfPresent(orderId, (k, pending) -> {
+                next[0] = pending.poll();
+                return next[0] != null ? pending : null;
+            });
+            if (next[0] == null) {
+                return;
+            }
+            next[0].run();
+        }
+    }
+
+    private final class Subscriber {
+        private final Long orderId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        private volatile boolean closed;
+        private volatile Thread thread;
+
+        Subscriber(Long orderId, SseEmitter emitter) {
+            this.orderId = orderId;
+            this.emitter = emitter;
+        }
+
+        synchronized void offer(Event event) {
+            if (!queue.offer(event)) {
+                // Too far behind: what is queued no longer matters
+                queue.clear();
+                queue.offer(new Event(RESYNC, null));
+            }
+        }
+
+        void run() {
+            try {
+                while (!closed) {
+                    Event event = queue.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                    if (event == null) {
+                        // Also finds connections that went away without closing
+                        emitter.send(SseEmitter.event().comment("keep-alive"));
+                    } else if (event.delta() == null) {
+                        emitter.send(SseEmitter.event().name(event.type()).data(""));
+                    } else {
+                        emitter.send(SseEmitter.event().name(event.type()).data(event.delta(),
+                                MediaType.APPLICATION_JSON));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                // Device gone; the emitter callbacks may not fire for a dead socket
+                emitter.completeWithError(e);
+            } finally {
+                close();
+            }
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sessions.computeIfPresent(orderId, (k, set) -> {
+                set.remove(this);
+                return set.isEmpty() ? null : set;
+            });
+            Thread t = thread;
+            if (t != null && t != Thread.currentThread()) {
+                t.interrupt();
+            }
+        }
+    }
+}
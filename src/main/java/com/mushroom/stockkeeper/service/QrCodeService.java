@@ -1,32 +1,162 @@
 package com.mushroom.stockkeeper.service;
 
 import com.google.zxing.BarcodeFormat;
-import com.google.zxing.client.j2se.MatrixToImageWriter;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
+import com.mushroom.stockkeeper.dto.QrCacheStats;
+import com.mushroom.stockkeeper.util.QrPngWriter;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import java.io.ByteArrayOutputStream;
-import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 public class QrCodeService {
 
+    public static final String FORMAT_PNG = "PNG";
+    public static final String FORMAT_SVG = "SVG";
+
+    // The image is fully determined by these, so equal keys can share one entry
+    private record Key(String content, int width, int height, String format) {
+    }
+
+    // Access-ordered map = LRU. Bounded by total image bytes rather than entry
+    // count, since a 600px label costs far more than a 150px one.
+    private final LinkedHashMap<Key, byte[]> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private final long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // QR encoding is pure CPU work. A label sheet asks /qr for hundreds of
+    // images at once, so cache misses are encoded on this bounded pool rather
+    // than on the request threads, which only wait for the result.
+    private final ExecutorService renderPool;
+
+    public QrCodeService(@Value("${stockkeeper.qr.cache-max-bytes:33554432}") long maxBytes,
+            @Value("${stockkeeper.qr.render-threads:0}") int renderThreads) {
+        this.maxBytes = maxBytes;
+        // 0 = half the cores, leaving the rest for request handling
+        int threads = renderThreads > 0 ? renderThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        this.renderPool = Executors.newFixedThreadPool(threads,
+                Thread.ofPlatform().name("qr-render-", 0).daemon().factory());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderPool.shutdownNow();
+    }
+
     public byte[] generateQrCodeImage(String text, int width, int height) throws Exception {
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(text, BarcodeFormat.QR_CODE, width, height);
+        Key key = new Key(text, width, height, FORMAT_PNG);
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return cached;
+        }
 
-        ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
-        MatrixToImageWriter.writeToStream(bitMatrix, "PNG", pngOutputStream);
-        return pngOutputStream.toByteArray();
+        // Encoding runs outside the lock; two threads missing on the same key
+        // both render it, which is harmless
+        byte[] image = render(() -> QrPngWriter.write(text, width, height));
+        store(key, image);
+        return image;
     }
 
-    public String generateQrCodeBase64(String text, int width, int height) {
+    // Vector QR: each horizontal run of dark modules becomes one stroke of a
+    // single <path>, drawn in module units and scaled by the viewBox, so it stays
+    // sharp at any printer resolution.
+    public String generateQrCodeSvg(String text, int width, int height) throws Exception {
+        Key key = new Key(text, width, height, FORMAT_SVG);
+        byte[] cached = lookup(key);
+        if (cached != null) {
+            return new String(cached, java.nio.charset.StandardCharsets.UTF_8);
+        }
+
+        String svg = render(() -> toSvg(text, width, height));
+        store(key, svg.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        return svg;
+    }
+
+    private static String toSvg(String text, int width, int height) throws Exception {
+        // 0x0 asks ZXing for one pixel per module (plus the quiet zone)
+        BitMatrix matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 0, 0);
+        int cols = matrix.getWidth();
+        int rows = matrix.getHeight();
+
+        StringBuilder path = new StringBuilder(rows * cols / 2);
+        for (int y = 0; y < rows; y++) {
+            int x = 0;
+            int penX = -1; // End of the previous run in this row, -1 before the first
+            while (x < cols) {
+                if (!matrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < cols && matrix.get(x, y)) {
+                    x++;
+                }
+                // Strokes are centred on y + 0.5; later runs in a row move relatively
+                if (penX < 0) {
+                    path.append('M').append(start).append(' ').append(y).append(".5");
+                } else {
+                    path.append('m').append(start - penX).append(" 0");
+                }
+                path.append('h').append(x - start);
+                penX = x;
+            }
+        }
+
+        return "<svg xmlns=\"http://www.w3.org/2000/svg\" viewBox=\"0 0 " + cols + " " + rows
+                + "\" width=\"" + width + "\" height=\"" + height + "\" class=\"qr-img\" shape-rendering=\"crispEdges\">"
+                + "<path stroke=\"#000\" d=\"" + path + "\"/></svg>";
+    }
+
+    // Runs the encoding on the render pool and hands back its result or exception
+    private <T> T render(Callable<T> encode) throws Exception {
         try {
-            byte[] imageBytes = generateQrCodeImage(text, width, height);
-            return Base64.getEncoder().encodeToString(imageBytes);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "";
+            return renderPool.submit(encode).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public synchronized QrCacheStats getCacheStats() {
+        return new QrCacheStats(hits, misses, evictions, cache.size(), bytes, maxBytes);
+    }
+
+    private synchronized byte[] lookup(Key key) {
+        byte[] image = cache.get(key);
+        if (image != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return image;
+    }
+
+    private synchronized void store(Key key, byte[] image) {
+        if (image.length > maxBytes) {
+            return; // Would evict everything else and still not fit
+        }
+        byte[] previous = cache.put(key, image);
+        bytes += image.length - (previous != null ? previous.length : 0);
+
+        // Least recently used entries come first
+        Iterator<Map.Entry<Key, byte[]>> it = cache.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().getValue().length;
+            it.remove();
+            evictions++;
         }
     }
 }
@@ -2,6 +2,7 @@ package com.mushroom.stockkeeper.service;
 
 import com.mushroom.stockkeeper.model.*;
 import com.mushroom.stockkeeper.repository.*;
+import com.mushroom.stockkeeper.util.UnitCode;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -16,19 +17,23 @@ public class ReturnsService {
     private final CreditNoteRepository creditNoteRepository;
 
     private final AuditService auditService;
+    private final BatchStockCounterService counterService;
 
     public ReturnsService(InventoryUnitRepository unitRepository, InvoiceRepository invoiceRepository,
-            CreditNoteRepository creditNoteRepository, AuditService auditService) {
+            CreditNoteRepository creditNoteRepository, AuditService auditService,
+            BatchStockCounterService counterService) {
         this.unitRepository = unitRepository;
         this.invoiceRepository = invoiceRepository;
         this.creditNoteRepository = creditNoteRepository;
         this.auditService = auditService;
+        this.counterService = counterService;
     }
 
     @Transactional
     public CreditNote processReturn(String qrContent, String reason) throws Exception {
-        String uuid = qrContent.startsWith("U:") ? qrContent.substring(2) : qrContent;
-        InventoryUnit unit = unitRepository.findByUuid(uuid).orElseThrow(() -> new Exception("Unit not found"));
+        InventoryUnit unit = unitRepository.findByCode(UnitCode.parse(qrContent))
+                .orElseThrow(() -> new Exception("Unit not found"));
+        String uuid = unit.getUuid();
 
         if (unit.getStatus() != InventoryStatus.SOLD) {
             throw new Exception("Unit is not SOLD (Status: " + unit.getStatus() + ")");
@@ -65,6 +70,7 @@ public class ReturnsService {
         }
 
         // Update Unit Status
+        counterService.record(unit.getBatch().getId(), InventoryStatus.SOLD, InventoryStatus.RETURNED);
         unit.setStatus(InventoryStatus.RETURNED);
         unitRepository.save(unit);
 
@@ -105,6 +111,7 @@ public class ReturnsService {
         if (unit.getStatus() != InventoryStatus.RETURNED) {
             throw new Exception("Only RETURNED units can be restocked.");
         }
+        counterService.record(unit.getBatch().getId(), InventoryStatus.RETURNED, InventoryStatus.AVAILABLE);
         unit.setStatus(InventoryStatus.AVAILABLE);
         unit.setSalesOrder(null);
         unit.setSoldPrice(null);
@@ -118,6 +125,7 @@ public class ReturnsService {
         if (unit.getStatus() != InventoryStatus.RETURNED) {
             throw new Exception("Only RETURNED units can be marked as spoiled (from Returns Module).");
         }
+        counterService.record(unit.getBatch().getId(), InventoryStatus.RETURNED, InventoryStatus.SPOILED);
         unit.setStatus(InventoryStatus.SPOILED);
         // We keep SalesOrder link for history? Or unlink?
         // Usually SPOILED means dead stock. Unlink makes sense to remove from "Active
@@ -2,6 +2,7 @@ package com.mushroom.stockkeeper.service;
 
 import com.mushroom.stockkeeper.model.*;
 import com.mushroom.stockkeeper.repository.*;
+import com.mushroom.stockkeeper.util.UnitCode;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -18,16 +19,30 @@ public class SalesService {
     private final PaymentRepository paymentRepository;
     private final CreditNoteRepository creditNoteRepository;
     private final AuditService auditService;
+    private final BatchStockCounterService counterService;
+    private final HarvestBatchRepository batchRepository;
+    private final OrderSessionHub sessionHub;
+    private final ScanReceiptStore scanReceipts;
+    // Scans claim units with a conditional UPDATE instead of a row lock
+    private final boolean optimisticClaim;
 
     public SalesService(SalesOrderRepository orderRepository, InventoryUnitRepository unitRepository,
             InvoiceRepository invoiceRepository, PaymentRepository paymentRepository,
-            CreditNoteRepository creditNoteRepository, AuditService auditService) {
+            CreditNoteRepository creditNoteRepository, AuditService auditService,
+            BatchStockCounterService counterService, HarvestBatchRepository batchRepository,
+            OrderSessionHub sessionHub, ScanReceiptStore scanReceipts,
+            @org.springframework.beans.factory.annotation.Value("${stockkeeper.sales.optimistic-claim:false}") boolean optimisticClaim) {
         this.orderRepository = orderRepository;
         this.unitRepository = unitRepository;
         this.invoiceRepository = invoiceRepository;
         this.paymentRepository = paymentRepository;
         this.creditNoteRepository = creditNoteRepository;
         this.auditService = auditService;
+        this.counterService = counterService;
+        this.batchRepository = batchRepository;
+        this.sessionHub = sessionHub;
+        this.scanReceipts = scanReceipts;
+        this.optimisticClaim = optimisticClaim;
     }
 
     @Transactional
@@ -48,25 +63,257 @@ public class SalesService {
 
     @Transactional
     public void allocateUnit(Long orderId, String qrContent) throws Exception {
+        // Parse QR: compact "M:..." or legacy "U:UUID" / bare UUID
+        UnitCode code = UnitCode.parse(qrContent);
+
+        if (optimisticClaim) {
+            claimUnit(orderId, code);
+            notifySession(orderId, "allocated", code);
+            return;
+        }
+
         SalesOrder so = orderRepository.findById(orderId).orElseThrow(() -> new Exception("Order not found"));
 
         if (so.getStatus() == SalesOrderStatus.INVOICED || so.getStatus() == SalesOrderStatus.CANCELLED) {
             throw new Exception("Cannot modify finalized order.");
         }
 
-        // Parse QR. Format "U:UUID" or just "U:UUID"
-        // Let's assume scanner reads "U:abc-123"
-        String uuid = qrContent.startsWith("U:") ? qrContent.substring(2) : qrContent;
-
         // CONCURRENCY FIX: Use Pessimistic Lock
-        InventoryUnit unit = unitRepository.findByUuidForUpdate(uuid)
-                .orElseThrow(() -> new Exception("Unit not found: " + uuid));
+        InventoryUnit unit = unitRepository.findByCodeForUpdate(code)
+                .orElseThrow(() -> new Exception("Unit not found: " + code));
+
+        if (!checkAllocatable(so, unit)) {
+            return; // Already added, ignore
+        }
+
+        // Link
+        counterService.record(unit.getBatch().getId(), InventoryStatus.AVAILABLE, InventoryStatus.ALLOCATED);
+        link(so, unit);
+
+        unitRepository.save(unit);
+        notifySession(orderId, "allocated", code);
+
+        // Update SO status if needed (e.g. to Picking)
+    }
+
+    // allocateUnit without a row lock: the unit's version and price are read
+    // unlocked, then one conditional UPDATE claims it only if that version is
+    // still current, so a contended scan fails at once instead of queueing
+    // behind another transaction. The order and unit entities are only loaded
+    // when the claim fails, to report why.
+    private void claimUnit(Long orderId, UnitCode code) throws Exception {
+        com.mushroom.stockkeeper.dto.UnitClaim claim = unitRepository.findClaim(code, orderId).orElse(null);
+        if (claim != null && unitRepository.claim(claim.unitId(), claim.version(),
+                orderRepository.getReferenceById(orderId),
+                claim.price() != null ? claim.price() : BigDecimal.ZERO, LocalDate.now()) == 1) {
+            counterService.record(claim.batchId(), InventoryStatus.AVAILABLE, InventoryStatus.ALLOCATED);
+            return;
+        }
+
+        // Not claimed: same checks and messages as the locking path
+        if (!orderRepository.existsById(orderId)) {
+            throw new Exception("Order not found");
+        }
+        SalesOrder so = orderRepository.getReferenceById(orderId);
+        if (so.getStatus() == SalesOrderStatus.INVOICED || so.getStatus() == SalesOrderStatus.CANCELLED) {
+            throw new Exception("Cannot modify finalized order.");
+        }
+        InventoryUnit unit = unitRepository.findByCode(code)
+                .orElseThrow(() -> new Exception("Unit not found: " + code));
+        if (checkAllocatable(so, unit)) {
+            // Released again between the UPDATE and this read
+            throw new Exception("Unit " + unit.getUuid() + " changed while it was scanned. Please scan again.");
+        }
+    }
+
+    // Most codes one bulk allocation may carry (bounds the IN lists)
+    public static final int MAX_BULK_ALLOCATION = 500;
+
+    // allocateUnit for many scanned codes in one transaction: the order is
+    // loaded once, all units are locked by a single query in id order, and the
+    // linked units are written in one flush. A code that fails does not stop
+    // the others; every code gets a result, in input order.
+    @Transactional
+    public java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> allocateUnits(Long orderId,
+            java.util.List<String> qrContents) throws Exception {
+        if (qrContents.size() > MAX_BULK_ALLOCATION) {
+            throw new Exception("At most " + MAX_BULK_ALLOCATION + " codes can be allocated at once.");
+        }
+        SalesOrder so = orderRepository.findById(orderId).orElseThrow(() -> new Exception("Order not found"));
+
+        if (so.getStatus() == SalesOrderStatus.INVOICED || so.getStatus() == SalesOrderStatus.CANCELLED) {
+            throw new Exception("Cannot modify finalized order.");
+        }
+
+        java.util.List<UnitCode> codes = qrContents.stream().map(UnitCode::parse).toList();
+
+        // Resolve ids without locking, then lock them all at once
+        java.util.Map<String, Long> idByUuid = new java.util.HashMap<>();
+        java.util.Map<Long, java.util.Map<Integer, Long>> idByBatchSeq = new java.util.HashMap<>();
+        java.util.Set<String> uuids = new java.util.HashSet<>();
+        java.util.Set<Long> batchIds = new java.util.HashSet<>();
+        java.util.Set<Integer> seqs = new java.util.HashSet<>();
+        for (UnitCode code : codes) {
+            if (code.isCompact()) {
+                batchIds.add(code.batchId());
+                seqs.add(code.seq());
+            } else {
+                uuids.add(code.uuid());
+            }
+        }
+        if (!uuids.isEmpty()) {
+            for (Object[] row : unitRepository.findIdsByUuidIn(uuids)) {
+                idByUuid.put((String) row[1], (Long) row[0]);
+            }
+        }
+        if (!batchIds.isEmpty()) {
+            for (Object[] row : unitRepository.findIdsByBatchIdInAndSeqIn(batchIds, seqs)) {
+                idByBatchSeq.computeIfAbsent((Long) row[1], k -> new java.util.HashMap<>())
+                        .put((Integer) row[2], (Long) row[0]);
+            }
+        }
+
+        Long[] ids = new Long[codes.size()];
+        java.util.Set<Long> toLock = new java.util.HashSet<>();
+        for (int i = 0; i < codes.size(); i++) {
+            UnitCode code = codes.get(i);
+            ids[i] = code.isCompact()
+                    ? idByBatchSeq.getOrDefault(code.batchId(), java.util.Map.of()).get(code.seq())
+                    : idByUuid.get(code.uuid());
+            if (ids[i] != null) {
+                toLock.add(ids[i]);
+            }
+        }
+        java.util.Map<Long, InventoryUnit> locked = new java.util.HashMap<>();
+        if (!toLock.isEmpty()) {
+            for (InventoryUnit unit : unitRepository.findAllByIdForUpdate(toLock)) {
+                locked.put(unit.getId(), unit);
+            }
+        }
+
+        java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> results = new java.util.ArrayList<>();
+        java.util.List<InventoryUnit> linked = new java.util.ArrayList<>();
+        java.util.Map<Long, Long> allocatedPerBatch = new java.util.HashMap<>();
+        for (int i = 0; i < codes.size(); i++) {
+            String content = qrContents.get(i);
+            InventoryUnit unit = ids[i] != null ? locked.get(ids[i]) : null;
+            if (unit == null) {
+                results.add(new com.mushroom.stockkeeper.dto.AllocationResult(content, null, false,
+                        "Unit not found: " + codes.get(i)));
+                continue;
+            }
+            try {
+                if (checkAllocatable(so, unit)) {
+                    link(so, unit);
+                    linked.add(unit);
+                    allocatedPerBatch.merge(unit.getBatch().getId(), 1L, Long::sum);
+                }
+                results.add(new com.mushroom.stockkeeper.dto.AllocationResult(content, unit.getUuid(), true, null));
+            } catch (Exception e) {
+                results.add(new com.mushroom.stockkeeper.dto.AllocationResult(content, unit.getUuid(), false,
+                        e.getMessage()));
+            }
+        }
+
+        allocatedPerBatch.forEach((batchId, count) -> counterService.record(batchId, InventoryStatus.AVAILABLE,
+                InventoryStatus.ALLOCATED, count));
+        unitRepository.saveAll(linked);
+        if (!allocatedPerBatch.isEmpty()) {
+            notifySession(orderId, "allocated", null);
+        }
+        return results;
+    }
+
+    // Scans a device queued while offline, each with its idempotency key.
+    // Keys already synced are answered with their stored result; the others
+    // go through allocateUnits. Results are in input order.
+    @Transactional
+    public java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> syncScans(Long orderId,
+            java.util.List<com.mushroom.stockkeeper.dto.QueuedScan> scans) throws Exception {
+        if (scans.size() > MAX_BULK_ALLOCATION) {
+            throw new Exception("At most " + MAX_BULK_ALLOCATION + " codes can be allocated at once.");
+        }
+        com.mushroom.stockkeeper.dto.AllocationResult[] results =
+                new com.mushroom.stockkeeper.dto.AllocationResult[scans.size()];
+        java.util.Map<String, Integer> firstByKey = new java.util.HashMap<>();
+        java.util.List<Integer> pending = new java.util.ArrayList<>();
+        for (int i = 0; i < scans.size(); i++) {
+            String key = scans.get(i).key();
+            if (key == null || key.isBlank()) {
+                throw new Exception("Every queued scan needs a key.");
+            }
+            results[i] = scanReceipts.get(orderId, key);
+            if (results[i] == null && firstByKey.putIfAbsent(key, i) == null) {
+                pending.add(i);
+            }
+        }
+
+        if (!pending.isEmpty()) {
+            java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> fresh = allocateUnits(orderId,
+                    pending.stream().map(i -> scans.get(i).code()).toList());
+            java.util.Map<String, com.mushroom.stockkeeper.dto.AllocationResult> byKey = new java.util.HashMap<>();
+            for (int j = 0; j < pending.size(); j++) {
+                results[pending.get(j)] = fresh.get(j);
+                byKey.put(scans.get(pending.get(j)).key(), fresh.get(j));
+            }
+            scanReceipts.putAfterCommit(orderId, byKey);
+        }
+        // The same key sent twice in one batch
+        for (int i = 0; i < scans.size(); i++) {
+            if (results[i] == null) {
+                results[i] = results[firstByKey.get(scans.get(i).key())];
+            }
+        }
+        return java.util.List.of(results);
+    }
+
+    // Allocates up to qty AVAILABLE, unexpired units of a product, first expiry
+    // first, e.g. "40 boxes of button mushrooms" on a wholesale order. Units
+    // another picker has locked are skipped rather than waited for. The units
+    // are linked and priced by one UPDATE. Returns how many were allocated,
+    // fewer than qty when there is not enough free stock.
+    @Transactional
+    public int allocateByQuantity(Long orderId, Long productId, int qty) throws Exception {
+        if (qty <= 0 || qty > MAX_BULK_ALLOCATION) {
+            throw new Exception("Quantity must be between 1 and " + MAX_BULK_ALLOCATION + ".");
+        }
+        SalesOrder so = orderRepository.findById(orderId).orElseThrow(() -> new Exception("Order not found"));
+
+        if (so.getStatus() == SalesOrderStatus.INVOICED || so.getStatus() == SalesOrderStatus.CANCELLED) {
+            throw new Exception("Cannot modify finalized order.");
+        }
+
+        java.util.List<Long> ids = new java.util.ArrayList<>();
+        java.util.Map<Long, Long> lockedPerBatch = new java.util.LinkedHashMap<>();
+        Product product = null;
+        for (InventoryUnit unit : unitRepository.lockSellableSkipLocked(productId, LocalDate.now(),
+                org.springframework.data.domain.Limit.of(qty))) {
+            ids.add(unit.getId());
+            product = unit.getBatch().getProduct();
+            lockedPerBatch.merge(unit.getBatch().getId(), 1L, Long::sum);
+        }
+        if (ids.isEmpty()) {
+            return 0;
+        }
+
+        // The rows are locked and AVAILABLE, so every one of them is updated
+        int allocated = unitRepository.allocateAll(ids, so, priceFor(so, product));
+        lockedPerBatch.forEach((batchId, count) -> counterService.record(batchId, InventoryStatus.AVAILABLE,
+                InventoryStatus.ALLOCATED, count));
+        notifySession(orderId, "allocated", null);
+        return allocated;
+    }
+
+    // False when the unit is already in this order (nothing to do); throws
+    // when it cannot be sold
+    private boolean checkAllocatable(SalesOrder so, InventoryUnit unit) throws Exception {
+        String uuid = unit.getUuid();
 
         if (unit.getStatus() != InventoryStatus.AVAILABLE) {
             // Idempotency: If already in THIS order, return success
             if (unit.getStatus() == InventoryStatus.ALLOCATED && unit.getSalesOrder() != null
-                    && unit.getSalesOrder().getId().equals(orderId)) {
-                return; // Already added, ignore
+                    && unit.getSalesOrder().getId().equals(so.getId())) {
+                return false;
             }
             throw new Exception("Unit " + uuid + " is not AVAILABLE (Status: " + unit.getStatus() + ")");
         }
@@ -77,14 +324,23 @@ public class SalesService {
                     "Unit " + uuid + " is EXPIRED (Expiry: " + unit.getBatch().getExpiryDate() + "). Cannot sell.");
         }
 
-        // Link
+        if (unit.getBatch().getDeletionStartedAt() != null) {
+            throw new Exception("Unit " + uuid + " belongs to a batch that is being deleted.");
+        }
+        return true;
+    }
+
+    private void link(SalesOrder so, InventoryUnit unit) {
         unit.setSalesOrder(so);
         unit.setStatus(InventoryStatus.ALLOCATED);
 
-        // Auto-Apply Pricing based on Order Type
+        unit.setSoldPrice(priceFor(so, unit.getBatch() != null ? unit.getBatch().getProduct() : null));
+    }
+
+    // Auto-Apply Pricing based on Order Type
+    private BigDecimal priceFor(SalesOrder so, Product product) {
         BigDecimal price = BigDecimal.ZERO;
-        if (unit.getBatch() != null && unit.getBatch().getProduct() != null) {
-            Product product = unit.getBatch().getProduct();
+        if (product != null) {
             // Check if Wholesale
             // We can check orderType OR customer type. OrderType is explicit.
             boolean isWholesale = "WHOLESALE".equalsIgnoreCase(so.getOrderType());
@@ -96,11 +352,35 @@ public class SalesService {
                 price = product.getRetailPrice() != null ? product.getRetailPrice() : BigDecimal.ZERO;
             }
         }
-        unit.setSoldPrice(price);
-
-        unitRepository.save(unit);
+        return price;
+    }
 
-        // Update SO status if needed (e.g. to Picking)
+    // Summary of the order as the picking page shows it (one row per product,
+    // totals summed per unit as finalizeOrder does), plus the unit just added
+    // or removed
+    @Transactional(readOnly = true)
+    public com.mushroom.stockkeeper.dto.OrderDelta orderDelta(Long orderId,
+            com.mushroom.stockkeeper.dto.PickedUnit added, Long removedUnitId) {
+        java.util.List<com.mushroom.stockkeeper.dto.OrderSummaryRow> rows = new java.util.ArrayList<>();
+        long unitCount = 0;
+        BigDecimal subTotal = BigDecimal.ZERO;
+        BigDecimal discountPercentage = BigDecimal.ZERO;
+        for (Object[] r : unitRepository.summarizeOrder(orderId)) {
+            long qty = (Long) r[2];
+            BigDecimal unitPrice = r[3] != null ? (BigDecimal) r[3] : BigDecimal.ZERO;
+            BigDecimal subtotal = r[5] != null ? (BigDecimal) r[5] : BigDecimal.ZERO;
+            rows.add(new com.mushroom.stockkeeper.dto.OrderSummaryRow((Long) r[0], (String) r[1], qty, unitPrice,
+                    subtotal));
+            unitCount += qty;
+            subTotal = subTotal.add(subtotal);
+            if (r[4] != null) {
+                discountPercentage = (BigDecimal) r[4];
+            }
+        }
+        // Same arithmetic as finalizeOrder
+        BigDecimal discountValue = subTotal.multiply(discountPercentage).divide(new BigDecimal(100));
+        return new com.mushroom.stockkeeper.dto.OrderDelta(orderId, unitCount, rows, subTotal, discountPercentage,
+                discountValue, subTotal.subtract(discountValue), added, removedUnitId);
     }
 
     @Transactional
@@ -114,9 +394,14 @@ public class SalesService {
         }
 
         if (unit.getStatus() == InventoryStatus.ALLOCATED) {
+            counterService.record(unit.getBatch().getId(), InventoryStatus.ALLOCATED, InventoryStatus.AVAILABLE);
+            Long orderId = unit.getSalesOrder() != null ? unit.getSalesOrder().getId() : null;
             unit.setSalesOrder(null);
             unit.setStatus(InventoryStatus.AVAILABLE);
             unitRepository.save(unit);
+            if (orderId != null) {
+                sessionHub.publishAfterCommit(orderId, "removed", () -> orderDelta(orderId, null, unitId));
+            }
         }
     }
 
@@ -142,6 +427,7 @@ public class SalesService {
                         "Order: " + orderId + ", Unit: " + unit.getUuid() + ", Old: " + oldPrice + ", New: " + price);
             }
         }
+        notifySession(orderId, "price", null);
     }
 
     @Transactional
@@ -158,6 +444,14 @@ public class SalesService {
 
         so.setDiscountPercentage(discountPercentage);
         orderRepository.save(so);
+        notifySession(orderId, "discount", null);
+    }
+
+    // Pushes the order's new state to every device picking it, once the
+    // change commits. added is the scanned unit, null when several changed.
+    private void notifySession(Long orderId, String type, UnitCode added) {
+        sessionHub.publishAfterCommit(orderId, type, () -> orderDelta(orderId,
+                added != null ? unitRepository.findPickedUnit(added).orElse(null) : null, null));
     }
 
     @Transactional
@@ -272,6 +566,7 @@ public class SalesService {
         orderRepository.save(so);
 
         // Update Units to SOLD
+        counterService.recordAll(so.getAllocatedUnits(), InventoryStatus.SOLD);
         for (InventoryUnit unit : so.getAllocatedUnits()) {
             unit.setStatus(InventoryStatus.SOLD);
             unitRepository.save(unit);
@@ -288,6 +583,7 @@ public class SalesService {
             // Simple Clean up for Abandoned / Mistaken Drafts
             auditService.log("CANCEL_DRAFT", "Cancelled Draft Order " + orderId);
             // Revert Units
+            counterService.recordAll(so.getAllocatedUnits(), InventoryStatus.AVAILABLE);
             for (InventoryUnit unit : so.getAllocatedUnits()) {
                 unit.setStatus(InventoryStatus.AVAILABLE);
                 unit.setSalesOrder(null);
@@ -359,6 +655,9 @@ public class SalesService {
         invoiceRepository.save(invoice);
 
         // Revert Units
+        counterService.recordAll(so.getAllocatedUnits().stream()
+                .filter(u -> u.getStatus() != InventoryStatus.RETURNED && u.getStatus() != InventoryStatus.SPOILED)
+                .toList(), InventoryStatus.AVAILABLE);
         for (InventoryUnit unit : so.getAllocatedUnits()) {
             if (unit.getStatus() == InventoryStatus.RETURNED || unit.getStatus() == InventoryStatus.SPOILED) {
                 // Keep state, just unlink (already returned)
@@ -0,0 +1,70 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.AllocationResult;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Outcome of every synced offline scan, by the idempotency key the device
+// gave it. A device whose sync response was lost sends the same scans again;
+// those are answered from here, without touching (or locking) the units, so
+// a unit removed from the order in the meantime is not put back.
+//
+// Receipts expire after stockkeeper.sales.scan-key-ttl-minutes, which must
+// outlast how long a device keeps retrying.
+@Service
+public class ScanReceiptStore {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ScanReceiptStore.class);
+
+    private record Receipt(AllocationResult result, long expiresAt) {
+    }
+
+    private final Map<String, Receipt> receipts = new ConcurrentHashMap<>();
+    private final long ttlMillis;
+
+    public ScanReceiptStore(@Value("${stockkeeper.sales.scan-key-ttl-minutes:1440}") long ttlMinutes) {
+        this.ttlMillis = ttlMinutes * 60_000;
+    }
+
+    public AllocationResult get(Long orderId, String key) {
+        Receipt receipt = receipts.get(orderId + ":" + key);
+        if (receipt == null || receipt.expiresAt() < System.currentTimeMillis()) {
+            return null;
+        }
+        return receipt.result();
+    }
+
+    // Kept only once the allocations they describe are committed
+    public void putAfterCommit(Long orderId, Map<String, AllocationResult> results) {
+        Runnable action = () -> {
+            long expiresAt = System.currentTimeMillis() + ttlMillis;
+            results.forEach((key, result) -> receipts.put(orderId + ":" + key, new Receipt(result, expiresAt)));
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    @Scheduled(fixedDelay = 300_000)
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        int before = receipts.size();
+        receipts.values().removeIf(r -> r.expiresAt() < now);
+        if (receipts.size() < before) {
+            logger.debug("Evicted {} expired scan receipts", before - receipts.size());
+        }
+    }
+}
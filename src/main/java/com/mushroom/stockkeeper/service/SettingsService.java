@@ -19,6 +19,7 @@ public class SettingsService {
     public static final String KEY_TARGET_PRINTER = "target_printer";
     public static final String KEY_CUSTOM_LABEL_WIDTH = "custom_label_width";
     public static final String KEY_CUSTOM_LABEL_HEIGHT = "custom_label_height";
+    public static final String KEY_QR_IMAGE_FORMAT = "qr_image_format";
 
     public SettingsService(AppSettingRepository appSettingRepository) {
         this.appSettingRepository = appSettingRepository;
@@ -60,6 +61,14 @@ public class SettingsService {
                 .orElse("");
     }
 
+    // PNG (default) or SVG, see QrCodeService
+    public String getQrImageFormat() {
+        return appSettingRepository.findBySettingKey(KEY_QR_IMAGE_FORMAT)
+                .map(AppSetting::getSettingValue)
+                .filter(QrCodeService.FORMAT_SVG::equals)
+                .orElse(QrCodeService.FORMAT_PNG);
+    }
+
     public Integer getCustomLabelWidth() {
         return appSettingRepository.findBySettingKey(KEY_CUSTOM_LABEL_WIDTH)
                 .map(AppSetting::getSettingValue)
@@ -0,0 +1,166 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.LabelRow;
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+// Native thermal label output: one ZPL II label (^XA..^XZ) per unit with the
+// QR drawn by the printer itself (^BQ), so a label is a few hundred bytes
+// instead of HTML plus an image.
+//
+// The target_printer setting selects where raw output goes:
+//   tcp://host:9100   raw port of a network printer (JetDirect/AppSocket)
+//   file:/path        appended to a local spool file or device
+@Service
+public class ZplLabelService {
+
+    private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(ZplLabelService.class);
+
+    // Units read and written per round trip
+    public static final int CHUNK_SIZE = 500;
+
+    private static final int DOTS_PER_MM = 8; // 203 dpi
+
+    private final HarvestBatchRepository batchRepository;
+    private final InventoryUnitRepository unitRepository;
+    private final SettingsService settingsService;
+
+    public ZplLabelService(HarvestBatchRepository batchRepository, InventoryUnitRepository unitRepository,
+            SettingsService settingsService) {
+        this.batchRepository = batchRepository;
+        this.unitRepository = unitRepository;
+        this.settingsService = settingsService;
+    }
+
+    // Sends labels of the batch (optionally only seq in [seqStart, seqEnd]) to
+    // the configured printer and returns how many were sent
+    public int print(Long batchId, Integer seqStart, Integer seqEnd) throws Exception {
+        String target = settingsService.getTargetPrinter().trim();
+        long started = System.currentTimeMillis();
+        int sent;
+        if (target.startsWith("tcp://")) {
+            java.net.URI uri = java.net.URI.create(target);
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(uri.getHost(), uri.getPort() > 0 ? uri.getPort() : 9100), 5000);
+                sent = write(batchId, seqStart, seqEnd, socket.getOutputStream());
+            }
+        } else if (target.startsWith("file:")) {
+            Path file = Path.of(target.substring("file:".length()));
+            try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                sent = write(batchId, seqStart, seqEnd, out);
+            }
+        } else {
+            throw new Exception("Target printer '" + target
+                    + "' is not a raw printer address. Set it to tcp://host:9100 or file:/path in Settings.");
+        }
+        logger.info("Sent {} ZPL labels of batch {} to {} in {} ms", sent, batchId, target,
+                System.currentTimeMillis() - started);
+        return sent;
+    }
+
+    // Streams the labels to out, flushing once per chunk
+    public int write(Long batchId, Integer seqStart, Integer seqEnd, OutputStream out) throws IOException {
+        HarvestBatch batch = batchRepository.findById(batchId).orElseThrow();
+        LabelLayout layout = layout();
+
+        BufferedOutputStream buffered = new BufferedOutputStream(out, 64 * 1024);
+        int afterSeq = seqStart != null ? Math.max(0, seqStart - 1) : 0;
+        int toSeq = seqEnd != null ? seqEnd : Integer.MAX_VALUE;
+        int sent = 0;
+        List<LabelRow> chunk;
+        do {
+            chunk = unitRepository.findLabelRows(batchId, afterSeq, toSeq, Limit.of(CHUNK_SIZE));
+            StringBuilder zpl = new StringBuilder(chunk.size() * 400);
+            for (LabelRow row : chunk) {
+                appendLabel(zpl, batch, row, layout);
+                afterSeq = row.seq();
+            }
+            buffered.write(zpl.toString().getBytes(StandardCharsets.UTF_8));
+            buffered.flush();
+            sent += chunk.size();
+        } while (chunk.size() == CHUNK_SIZE);
+        return sent;
+    }
+
+    private record LabelLayout(int width, int height, int qrMagnification, int font) {
+    }
+
+    private LabelLayout layout() {
+        int widthMm;
+        int heightMm;
+        switch (settingsService.getLabelSheetSize()) {
+            case "THERMAL_4x6" -> {
+                widthMm = 100;
+                heightMm = 150;
+            }
+            case "THERMAL_CUSTOM" -> {
+                widthMm = settingsService.getCustomLabelWidth();
+                heightMm = settingsService.getCustomLabelHeight();
+            }
+            // A4 sheets are not thermal stock; fall back to the common 2x1" roll
+            default -> {
+                widthMm = 50;
+                heightMm = 25;
+            }
+        }
+        int width = widthMm * DOTS_PER_MM;
+        int height = heightMm * DOTS_PER_MM;
+        // A compact payload is a 21-25 module symbol; keep it within the label
+        // height and under half its width
+        int magnification = Math.max(1, Math.min(10, Math.min(height - 20, width / 2) / 25));
+        int font = Math.max(18, Math.min(40, height / 9));
+        return new LabelLayout(width, height, magnification, font);
+    }
+
+    private void appendLabel(StringBuilder zpl, HarvestBatch batch, LabelRow row, LabelLayout layout) {
+        Product product = batch.getProduct();
+        int x = 20 + layout.qrMagnification() * 25 + 20;
+        int line = layout.font() + 6;
+        int y = 15;
+
+        zpl.append("^XA^CI28^PW").append(layout.width()).append("^LL").append(layout.height());
+        zpl.append("^FO10,10^BQN,2,").append(layout.qrMagnification())
+                .append("^FDMA,").append(field(row.qrCodeContent())).append("^FS");
+        y = text(zpl, x, y, layout.font(), product.getName());
+        if (product.getMrp() != null) {
+            y = text(zpl, x, y, layout.font(), "MRP: " + product.getMrp());
+        }
+        if (product.getFssaiLicenseNumber() != null) {
+            y = text(zpl, x, y, layout.font() * 3 / 4, "FSSAI: " + product.getFssaiLicenseNumber());
+        }
+        y = text(zpl, x, y, layout.font() * 3 / 4, "Pkd: " + batch.getBatchDate());
+        if (batch.getExpiryDate() != null) {
+            y = text(zpl, x, y, layout.font() * 3 / 4, "Exp: " + batch.getExpiryDate());
+        }
+        text(zpl, x, Math.max(y, layout.height() - line), layout.font() * 2 / 3, row.uuid());
+        zpl.append("^XZ\n");
+    }
+
+    private static int text(StringBuilder zpl, int x, int y, int font, String value) {
+        zpl.append("^FO").append(x).append(',').append(y)
+                .append("^A0N,").append(font).append(',').append(font)
+                .append("^FD").append(field(value)).append("^FS");
+        return y + font + 6;
+    }
+
+    // ^ and ~ start ZPL commands and cannot appear in field data
+    private static String field(String value) {
+        return value == null ? "" : value.replace('^', ' ').replace('~', ' ');
+    }
+}
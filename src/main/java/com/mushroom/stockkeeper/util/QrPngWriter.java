@@ -0,0 +1,163 @@
+package com.mushroom.stockkeeper.util;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+// Writes a QR code as a 1-bit grayscale PNG straight from the encoder's module
+// matrix. Pixel-for-pixel the same image as QRCodeWriter + MatrixToImageWriter,
+// without the scaled BitMatrix, the BufferedImage, ImageIO's PNG writer or the
+// growing ByteArrayOutputStream: the only per-call allocations are ZXing's
+// module matrix and the returned byte[]. Row and deflate buffers come from a
+// small shared pool rather than ThreadLocals, since requests run on virtual
+// threads that would each get (and drop) their own.
+public final class QrPngWriter {
+
+    // Same defaults as QRCodeWriter without hints: level L, 4 module quiet zone
+    private static final int QUIET_ZONE = 4;
+
+    private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+    private static final class Buffers {
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        final CRC32 crc = new CRC32();
+        byte[] raw = new byte[8 * 1024];
+        byte[] compressed = new byte[4 * 1024];
+    }
+
+    private static final int MAX_POOLED = 64;
+    private static final ConcurrentLinkedQueue<Buffers> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private QrPngWriter() {
+    }
+
+    public static byte[] write(String contents, int width, int height) throws WriterException {
+        if (contents == null || contents.isEmpty()) {
+            throw new IllegalArgumentException("Found empty contents");
+        }
+        ByteMatrix modules = Encoder.encode(contents, ErrorCorrectionLevel.L).getMatrix();
+
+        Buffers buf = POOL.poll();
+        if (buf != null) {
+            POOLED.decrementAndGet();
+        } else {
+            buf = new Buffers();
+        }
+        try {
+            return render(modules, width, height, buf);
+        } finally {
+            if (POOLED.incrementAndGet() <= MAX_POOLED) {
+                POOL.offer(buf);
+            } else {
+                POOLED.decrementAndGet();
+                buf.deflater.end();
+            }
+        }
+    }
+
+    private static byte[] render(ByteMatrix modules, int width, int height, Buffers buf) {
+        // Scaling and centring as in QRCodeWriter.renderResult
+        int inputWidth = modules.getWidth() + QUIET_ZONE * 2;
+        int inputHeight = modules.getHeight() + QUIET_ZONE * 2;
+        int outputWidth = Math.max(width, inputWidth);
+        int outputHeight = Math.max(height, inputHeight);
+        int multiple = Math.min(outputWidth / inputWidth, outputHeight / inputHeight);
+        int leftPadding = (outputWidth - modules.getWidth() * multiple) / 2;
+        int topPadding = (outputHeight - modules.getHeight() * multiple) / 2;
+
+        int stride = 1 + (outputWidth + 7) / 8; // Filter byte + packed pixels
+        int rawLength = stride * outputHeight;
+        if (buf.raw.length < rawLength) {
+            buf.raw = new byte[rawLength];
+        }
+        byte[] raw = buf.raw;
+
+        // Grayscale 1-bit: 1 is white. Start all white, then clear dark modules.
+        Arrays.fill(raw, 0, rawLength, (byte) 0xff);
+        for (int y = 0; y < outputHeight; y++) {
+            raw[y * stride] = 0; // Filter type None
+        }
+        for (int my = 0; my < modules.getHeight(); my++) {
+            int rowStart = (topPadding + my * multiple) * stride;
+            for (int mx = 0; mx < modules.getWidth(); mx++) {
+                if (modules.get(mx, my) != 1) {
+                    continue;
+                }
+                int px = leftPadding + mx * multiple;
+                for (int i = 0; i < multiple; i++, px++) {
+                    raw[rowStart + 1 + (px >> 3)] &= (byte) ~(0x80 >>> (px & 7));
+                }
+            }
+            // The other rows of this module row are copies
+            for (int r = 1; r < multiple; r++) {
+                System.arraycopy(raw, rowStart, raw, rowStart + r * stride, stride);
+            }
+        }
+
+        Deflater deflater = buf.deflater;
+        deflater.reset();
+        deflater.setInput(raw, 0, rawLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == buf.compressed.length) {
+                buf.compressed = Arrays.copyOf(buf.compressed, buf.compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(buf.compressed, compressedLength, buf.compressed.length - compressedLength);
+        }
+
+        // Signature + IHDR (13) + IDAT + IEND, each chunk with 12 bytes of framing
+        byte[] png = new byte[SIGNATURE.length + 25 + 12 + compressedLength + 12];
+        System.arraycopy(SIGNATURE, 0, png, 0, SIGNATURE.length);
+        int pos = SIGNATURE.length;
+
+        pos = chunkStart(png, pos, 13, "IHDR");
+        pos = putInt(png, pos, outputWidth);
+        pos = putInt(png, pos, outputHeight);
+        png[pos++] = 1; // Bit depth
+        png[pos++] = 0; // Grayscale
+        png[pos++] = 0; // Deflate
+        png[pos++] = 0; // Adaptive filtering
+        png[pos++] = 0; // No interlace
+        pos = chunkEnd(png, pos, 13, buf.crc);
+
+        pos = chunkStart(png, pos, compressedLength, "IDAT");
+        System.arraycopy(buf.compressed, 0, png, pos, compressedLength);
+        pos = chunkEnd(png, pos + compressedLength, compressedLength, buf.crc);
+
+        pos = chunkStart(png, pos, 0, "IEND");
+        chunkEnd(png, pos, 0, buf.crc);
+        return png;
+    }
+
+    private static int chunkStart(byte[] png, int pos, int length, String type) {
+        pos = putInt(png, pos, length);
+        for (int i = 0; i < 4; i++) {
+            png[pos++] = (byte) type.charAt(i);
+        }
+        return pos;
+    }
+
+    // CRC over the chunk type and data just written
+    private static int chunkEnd(byte[] png, int pos, int length, CRC32 crc) {
+        crc.reset();
+        crc.update(png, pos - length - 4, length + 4);
+        return putInt(png, pos, (int) crc.getValue());
+    }
+
+    private static int putInt(byte[] png, int pos, int value) {
+        png[pos] = (byte) (value >>> 24);
+        png[pos + 1] = (byte) (value >>> 16);
+        png[pos + 2] = (byte) (value >>> 8);
+        png[pos + 3] = (byte) value;
+        return pos + 4;
+    }
+}
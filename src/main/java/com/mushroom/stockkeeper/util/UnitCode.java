@@ -0,0 +1,69 @@
+package com.mushroom.stockkeeper.util;
+
+// Parsed form of a unit identifier as scanned from a label.
+//
+// Compact payloads ("M:" + base-36 of batchId << SEQ_BITS | seq) identify the
+// unit by (batchId, seq) and are what new labels carry: short, upper-case
+// alphanumeric, so they encode in QR alphanumeric mode at a low version.
+//
+// Legacy payloads are the unit UUID "<batchCode>-<seq>" (e.g.
+// B-20231222-1703239999-17), optionally prefixed with "U:". batchCode/seq are
+// null when the UUID does not follow that pattern (e.g. hand-made test data).
+public record UnitCode(String uuid, Long batchId, String batchCode, Integer seq) {
+
+    public static final String LEGACY_PREFIX = "U:";
+    public static final String COMPACT_PREFIX = "M:";
+
+    // Low bits of the packed value hold seq (BatchService caps batches at 50000 units)
+    private static final int SEQ_BITS = 20;
+    private static final long SEQ_MASK = (1L << SEQ_BITS) - 1;
+
+    public static String encode(long batchId, int seq) {
+        return COMPACT_PREFIX + Long.toString((batchId << SEQ_BITS) | seq, 36).toUpperCase();
+    }
+
+    public static UnitCode parse(String payload) {
+        String uuid = payload.trim();
+
+        if (uuid.regionMatches(true, 0, COMPACT_PREFIX, 0, COMPACT_PREFIX.length())) {
+            try {
+                long packed = Long.parseLong(uuid.substring(COMPACT_PREFIX.length()), 36);
+                int seq = (int) (packed & SEQ_MASK);
+                long batchId = packed >>> SEQ_BITS;
+                if (packed > 0 && seq > 0 && batchId > 0) {
+                    return new UnitCode(null, batchId, null, seq);
+                }
+            } catch (NumberFormatException e) {
+                // Not a compact payload, fall through to the legacy format
+            }
+        }
+
+        if (uuid.startsWith(LEGACY_PREFIX)) {
+            uuid = uuid.substring(LEGACY_PREFIX.length());
+        }
+
+        int dash = uuid.lastIndexOf('-');
+        if (dash > 0 && dash < uuid.length() - 1) {
+            try {
+                int seq = Integer.parseInt(uuid.substring(dash + 1));
+                if (seq > 0) {
+                    return new UnitCode(uuid, null, uuid.substring(0, dash), seq);
+                }
+            } catch (NumberFormatException e) {
+                // Not a sequenced UUID
+            }
+        }
+        return new UnitCode(uuid, null, null, null);
+    }
+
+    // True for compact payloads, which are looked up by (batchId, seq)
+    public boolean isCompact() {
+        return uuid == null;
+    }
+
+    // Human-readable form for error messages
+    @Override
+    public String toString() {
+        return isCompact() ? "batch " + batchId + " #" + seq : uuid;
+    }
+}
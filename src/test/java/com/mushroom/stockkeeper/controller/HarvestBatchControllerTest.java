@@ -0,0 +1,160 @@
+package com.mushroom.stockkeeper.controller;
+
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.ProductRepository;
+import com.mushroom.stockkeeper.service.AuditService;
+import com.mushroom.stockkeeper.service.BatchService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.time.LocalDate;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.httpBasic;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.user;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Not @Transactional: labels are streamed from another thread, which has to
+// see the batch. Everything created is removed afterwards.
+@SpringBootTest(properties = { "stockkeeper.labels.max-labels-per-job=80", "stockkeeper.batch.async-threshold=50" })
+@AutoConfigureMockMvc
+class HarvestBatchControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.UOMRepository uomRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.service.BatchDeletionService deletionService;
+
+    @Autowired
+    private com.mushroom.stockkeeper.service.BatchCreationJobService jobService;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.HarvestBatchRepository batchRepository;
+
+    @MockBean
+    private AuditService auditService;
+
+    private HarvestBatch batch;
+    private Product product;
+
+    @AfterEach
+    void cleanUp() throws Exception {
+        if (batch != null) {
+            deletionService.delete(batch.getId());
+        }
+        if (product != null) {
+            productRepository.delete(product);
+        }
+    }
+
+    private String print(String query) throws Exception {
+        MvcResult started = mockMvc.perform(get("/batches/" + batch.getId() + "/print" + query)).andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+
+    private static int labelCount(String html) {
+        return html.split("class=\"label-item\"").length - 1;
+    }
+
+    @Test
+    @WithMockUser(roles = "PRODUCTION")
+    void printLabels_ShouldSplitBatchIntoJobsOfWholeSheets() throws Exception {
+        Product p = new Product();
+        p.setName("Mushrooms Print");
+        p.setSku("MUSH-PRINT");
+        p.setUom(uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM uom = new com.mushroom.stockkeeper.model.UOM();
+            uom.setCode("KG");
+            return uomRepository.save(uom);
+        }));
+        product = productRepository.save(p);
+        batch = batchService.createBatch(product, 100, LocalDate.now());
+
+        // Default A4_40 sheets: 80 labels per job = 2 sheets
+        String job1 = print("");
+        Assertions.assertEquals(80, labelCount(job1));
+        Assertions.assertTrue(job1.contains("Job 1 of 2"));
+        Assertions.assertTrue(job1.trim().endsWith("</html>"));
+
+        String job2 = print("?job=2");
+        Assertions.assertEquals(20, labelCount(job2));
+        Assertions.assertTrue(job2.contains("/qr/" + batch.getBatchCode() + "-100.png"));
+
+        // The reprint comes from the artifact store, unchanged
+        Assertions.assertEquals(job1, print("?job=1"));
+
+        String range = print("?seqStart=10&seqEnd=14");
+        Assertions.assertEquals(5, labelCount(range));
+        Assertions.assertTrue(range.contains("/qr/" + batch.getBatchCode() + "-10.png"));
+        Assertions.assertFalse(range.contains("/qr/" + batch.getBatchCode() + "-15.png"));
+    }
+
+    @Test
+    void importCsvStream_ShouldTakeBasicAuthWithoutCsrfAndQueueLargeLines() throws Exception {
+        Product p = new Product();
+        p.setName("Mushrooms Csv");
+        p.setSku("MUSH-CSV");
+        p.setUom(uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM uom = new com.mushroom.stockkeeper.model.UOM();
+            uom.setCode("KG");
+            return uomRepository.save(uom);
+        }));
+        product = productRepository.save(p);
+        String csv = "MUSH-CSV,60," + LocalDate.now();
+
+        // A logged-in browser session still needs its CSRF token
+        mockMvc.perform(post("/batches/import").contentType("text/csv").content(csv)
+                .with(user("admin").roles("ADMIN")))
+                .andExpect(status().isForbidden());
+
+        String body = mockMvc.perform(post("/batches/import").contentType("text/csv").content(csv)
+                .with(httpBasic("admin", "password")))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows[0].background").value(true))
+                .andExpect(jsonPath("$.unitsCreated").value(0))
+                .andReturn().getResponse().getContentAsString();
+
+        String batchCode = com.jayway.jsonpath.JsonPath.read(body, "$.rows[0].batchCode");
+        batch = batchRepository.findByBatchCode(batchCode).orElseThrow();
+        for (int i = 0; i < 100 && jobService.isRunning(batch.getId()); i++) {
+            Thread.sleep(50);
+        }
+        Assertions.assertEquals("COMPLETED", jobService.getProgress(batch.getId()).orElseThrow().state());
+
+        mockMvc.perform(post("/batches/import").contentType("text/csv").content(csv)
+                .with(httpBasic("admin", "wrong")))
+                .andExpect(status().isUnauthorized());
+
+        // Basic credentials do not lift CSRF from the browser's upload form
+        mockMvc.perform(multipart("/batches/import")
+                .file(new org.springframework.mock.web.MockMultipartFile("file", "log.csv", "text/csv",
+                        csv.getBytes(java.nio.charset.StandardCharsets.UTF_8)))
+                .with(httpBasic("admin", "password")))
+                .andExpect(status().isForbidden());
+    }
+}
@@ -0,0 +1,58 @@
+package com.mushroom.stockkeeper.controller;
+
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Optional;
+
+import static org.hamcrest.Matchers.containsString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class QrCodeControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockBean
+    private InventoryUnitRepository unitRepository;
+
+    @Test
+    @WithMockUser(roles = "PRODUCTION")
+    void png_ShouldBeImmutableAndRevalidateWithEtag() throws Exception {
+        when(unitRepository.findQrCodeContentByUuid("B1-1")).thenReturn(Optional.of("M:ABC"));
+
+        String etag = mockMvc.perform(get("/qr/B1-1.png"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/png"))
+                .andExpect(header().string("Cache-Control", containsString("immutable")))
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+
+        mockMvc.perform(get("/qr/B1-1.png").header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    @WithMockUser(roles = "PRODUCTION")
+    void svg_ShouldServeVectorAndMissingUnitIs404() throws Exception {
+        when(unitRepository.findQrCodeContentByUuid("B1-1")).thenReturn(Optional.of("M:ABC"));
+
+        mockMvc.perform(get("/qr/B1-1.svg").param("size", "300"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("image/svg+xml"))
+                .andExpect(content().string(containsString("width=\"300\"")));
+
+        mockMvc.perform(get("/qr/NOPE-1.svg"))
+                .andExpect(status().isNotFound());
+    }
+}
@@ -48,6 +48,8 @@ class SalesControllerTest {
     private com.mushroom.stockkeeper.service.CustomUserDetailsService userDetailsService;
     @MockBean
     private com.mushroom.stockkeeper.service.AuditService auditService;
+    @Autowired
+    private com.mushroom.stockkeeper.service.OrderSessionHub sessionHub;
 
     @Test
     @WithMockUser(roles = "SALES")
@@ -110,6 +112,122 @@ class SalesControllerTest {
         verify(salesService).allocateUnit(10L, "U:123");
     }
 
+    @Test
+    @WithMockUser(roles = "SALES")
+    void searchUnits_ShouldPageWithKeysetCursor() throws Exception {
+        java.util.List<com.mushroom.stockkeeper.dto.PickedUnit> rows = new java.util.ArrayList<>();
+        for (long i = 1; i <= 31; i++) {
+            rows.add(new com.mushroom.stockkeeper.dto.PickedUnit(100 + i, "B-1-" + i, "Oyster"));
+        }
+        when(unitRepository.searchAvailable(null, 5L, "B-1-", 0L, 31)).thenReturn(rows);
+
+        mockMvc.perform(get("/sales/10/units/search")
+                .param("q", "U:B-1-")
+                .param("batchId", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.results.length()").value(30))
+                .andExpect(jsonPath("$.results[0].id").value("B-1-1"))
+                .andExpect(jsonPath("$.results[0].text").value("B-1-1 - Oyster"))
+                .andExpect(jsonPath("$.pagination.more").value(true))
+                .andExpect(jsonPath("$.next").value(130));
+    }
+
+    @Test
+    @WithMockUser(roles = "SALES")
+    void removeUnit_ShouldAnswerJsonWithOrderDelta() throws Exception {
+        when(salesService.orderDelta(10L, null, 7L)).thenReturn(new com.mushroom.stockkeeper.dto.OrderDelta(10L, 2,
+                java.util.List.of(), java.math.BigDecimal.TEN, java.math.BigDecimal.ZERO, java.math.BigDecimal.ZERO,
+                java.math.BigDecimal.TEN, null, 7L));
+
+        mockMvc.perform(post("/sales/10/remove")
+                .param("unitId", "7")
+                .accept(org.springframework.http.MediaType.APPLICATION_JSON)
+                .with(csrf()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.unitCount").value(2))
+                .andExpect(jsonPath("$.removedUnitId").value(7));
+
+        verify(salesService).removeUnit(7L);
+
+        // A browser form post still redirects back to the order
+        mockMvc.perform(post("/sales/10/remove")
+                .param("unitId", "7")
+                .header("Accept", "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8")
+                .with(csrf()))
+                .andExpect(status().is3xxRedirection());
+    }
+
+    @Test
+    @WithMockUser(roles = "SALES")
+    void events_ShouldStreamOrderDeltasToSubscribedDevices() throws Exception {
+        when(orderRepository.existsById(10L)).thenReturn(true);
+
+        org.springframework.test.web.servlet.MvcResult first = mockMvc.perform(get("/sales/10/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        org.springframework.test.web.servlet.MvcResult second = mockMvc.perform(get("/sales/10/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        org.junit.jupiter.api.Assertions.assertEquals(2, sessionHub.subscriberCount(10L));
+
+        sessionHub.publish(10L, "allocated", new com.mushroom.stockkeeper.dto.OrderDelta(10L, 1,
+                java.util.List.of(), java.math.BigDecimal.TEN, java.math.BigDecimal.ZERO, java.math.BigDecimal.ZERO,
+                java.math.BigDecimal.TEN, new com.mushroom.stockkeeper.dto.PickedUnit(7L, "B-1-1", "Oyster"), null));
+
+        for (org.springframework.test.web.servlet.MvcResult result : java.util.List.of(first, second)) {
+            String body = "";
+            for (int i = 0; i < 50 && !body.contains("B-1-1"); i++) {
+                Thread.sleep(20);
+                body = result.getResponse().getContentAsString();
+            }
+            org.junit.jupiter.api.Assertions.assertTrue(body.contains("event:allocated"), body);
+            org.junit.jupiter.api.Assertions.assertTrue(body.contains("\"unitCount\":1"), body);
+        }
+
+        // Another order's devices are not told
+        sessionHub.publish(11L, "allocated", null);
+        org.junit.jupiter.api.Assertions.assertFalse(sessionHub.hasSubscribers(11L));
+
+        when(orderRepository.existsById(12L)).thenReturn(false);
+        mockMvc.perform(get("/sales/12/events"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser(roles = "SALES")
+    void events_ShouldArriveInCommitOrderWhenADeltaBuildsSlowly() throws Exception {
+        when(orderRepository.existsById(20L)).thenReturn(true);
+        org.springframework.test.web.servlet.MvcResult stream = mockMvc.perform(get("/sales/20/events"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        for (int n = 1; n <= 3; n++) {
+            int unitCount = n;
+            sessionHub.publishAfterCommit(20L, "allocated", () -> {
+                if (unitCount == 1) {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return new com.mushroom.stockkeeper.dto.OrderDelta(20L, unitCount, java.util.List.of(),
+                        java.math.BigDecimal.TEN, java.math.BigDecimal.ZERO, java.math.BigDecimal.ZERO,
+                        java.math.BigDecimal.TEN, null, null);
+            });
+        }
+
+        String body = "";
+        for (int i = 0; i < 100 && !body.contains("\"unitCount\":3"); i++) {
+            Thread.sleep(20);
+            body = stream.getResponse().getContentAsString();
+        }
+        int first = body.indexOf("\"unitCount\":1");
+        int second = body.indexOf("\"unitCount\":2");
+        int third = body.indexOf("\"unitCount\":3");
+        org.junit.jupiter.api.Assertions.assertTrue(first >= 0 && first < second && second < third, body);
+    }
+
     @Test
     @WithMockUser(roles = "SALES")
     void finalize_ShouldRedirectToInvoice() throws Exception {
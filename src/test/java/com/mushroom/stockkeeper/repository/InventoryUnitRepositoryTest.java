@@ -26,6 +26,9 @@ class InventoryUnitRepositoryTest {
     @Autowired
     private UOMRepository uomRepository;
 
+    @Autowired
+    private org.springframework.jdbc.core.JdbcTemplate jdbcTemplate;
+
     @Test
     void findByUuidForUpdate_ShouldReturnUnit() {
         // Setup
@@ -49,6 +52,7 @@ class InventoryUnitRepositoryTest {
         InventoryUnit unit = new InventoryUnit();
         unit.setUuid("U:TEST-LOCK");
         unit.setBatch(batch);
+        unit.setSeq(1);
         unit.setStatus(InventoryStatus.AVAILABLE);
         unit.setQrCodeContent("QR-CODE-1");
         unitRepository.save(unit);
@@ -82,6 +86,7 @@ class InventoryUnitRepositoryTest {
         InventoryUnit u1 = new InventoryUnit();
         u1.setBatch(batch);
         u1.setUuid("U:1");
+        u1.setSeq(1);
         u1.setStatus(InventoryStatus.AVAILABLE);
         u1.setQrCodeContent("QR-1");
         unitRepository.save(u1);
@@ -89,6 +94,7 @@ class InventoryUnitRepositoryTest {
         InventoryUnit u2 = new InventoryUnit();
         u2.setBatch(batch);
         u2.setUuid("U:2");
+        u2.setSeq(2);
         u2.setStatus(InventoryStatus.AVAILABLE);
         u2.setQrCodeContent("QR-2");
         unitRepository.save(u2);
@@ -98,4 +104,162 @@ class InventoryUnitRepositoryTest {
 
         assertEquals(2, units.size());
     }
+
+    @Test
+    void backfillUnitSequences_ShouldParseUuidSuffix() {
+        UOM uom = new UOM();
+        uom.setCode("kg3");
+        uomRepository.save(uom);
+
+        Product p = new Product();
+        p.setName("Mushrooms3");
+        p.setSku("MUSH-003");
+        p.setUom(uom);
+        productRepository.save(p);
+
+        HarvestBatch batch = new HarvestBatch();
+        batch.setBatchCode("B-20240101-123");
+        batch.setProduct(p);
+        batch.setBatchDate(LocalDate.now());
+        batch = batchRepository.save(batch);
+
+        // Schema of an install from before seq existed
+        jdbcTemplate.execute("ALTER TABLE sk_inventory_units ALTER COLUMN seq SET NULL");
+
+        InventoryUnit legacy = new InventoryUnit();
+        legacy.setBatch(batch);
+        legacy.setUuid("B-20240101-123-7");
+        legacy.setStatus(InventoryStatus.AVAILABLE);
+        legacy.setQrCodeContent("U:B-20240101-123-7");
+        unitRepository.saveAndFlush(legacy);
+
+        InventoryUnit unsequenced = new InventoryUnit();
+        unsequenced.setBatch(batch);
+        unsequenced.setUuid("3f2c9a1e-legacy");
+        unsequenced.setStatus(InventoryStatus.AVAILABLE);
+        unsequenced.setQrCodeContent("U:3f2c9a1e-legacy");
+        unitRepository.saveAndFlush(unsequenced);
+
+        assertEquals(2, unitRepository.backfillUnitSequences());
+
+        Optional<InventoryUnit> result = unitRepository.findByBatchIdAndSeq(batch.getId(), 7);
+        assertTrue(result.isPresent());
+        assertEquals("B-20240101-123-7", result.get().getUuid());
+        // No suffix to parse: numbered after the batch's last unit
+        assertEquals("3f2c9a1e-legacy", unitRepository.findByBatchIdAndSeq(batch.getId(), 8).orElseThrow().getUuid());
+
+        jdbcTemplate.execute("ALTER TABLE sk_inventory_units ALTER COLUMN seq SET NOT NULL");
+    }
+
+    @Test
+    void findUnitRows_ShouldPageBySeq() {
+        UOM uom = new UOM();
+        uom.setCode("kg4");
+        uomRepository.save(uom);
+
+        Product p = new Product();
+        p.setName("Mushrooms4");
+        p.setSku("MUSH-004");
+        p.setUom(uom);
+        productRepository.save(p);
+
+        HarvestBatch batch = new HarvestBatch();
+        batch.setBatchCode("B-004");
+        batch.setProduct(p);
+        batch.setBatchDate(LocalDate.now());
+        batch = batchRepository.save(batch);
+
+        unitRepository.insertAvailableUnits(batch.getId(), batch.getBatchCode(), 1, 5);
+        InventoryUnit sold = unitRepository.findByBatchIdAndSeq(batch.getId(), 4).orElseThrow();
+        sold.setStatus(InventoryStatus.SOLD);
+        unitRepository.saveAndFlush(sold);
+
+        var first = unitRepository.findUnitRows(batch.getId(), 0, org.springframework.data.domain.Limit.of(2));
+        assertEquals(List.of(1, 2), first.stream().map(r -> r.seq()).toList());
+
+        var next = unitRepository.findUnitRows(batch.getId(), 2, org.springframework.data.domain.Limit.of(2));
+        assertEquals(List.of(3, 4), next.stream().map(r -> r.seq()).toList());
+        assertEquals(InventoryStatus.SOLD, next.get(1).status());
+
+        var available = unitRepository.findUnitRowsByStatus(batch.getId(), InventoryStatus.AVAILABLE, 2,
+                org.springframework.data.domain.Limit.of(10));
+        assertEquals(List.of(3, 5), available.stream().map(r -> r.seq()).toList());
+
+        var uuids = unitRepository.findAvailableUuids(java.util.Map.of(batch.getId(), 4));
+        assertEquals(List.of("B-004-1", "B-004-2", "B-004-3", "B-004-5"), uuids.get(batch.getId()));
+    }
+
+    @Test
+    void findByCode_ShouldResolveCompactAndLegacyPayloads() {
+        UOM uom = new UOM();
+        uom.setCode("kg5");
+        uomRepository.save(uom);
+
+        Product p = new Product();
+        p.setName("Mushrooms5");
+        p.setSku("MUSH-005");
+        p.setUom(uom);
+        productRepository.save(p);
+
+        HarvestBatch batch = new HarvestBatch();
+        batch.setBatchCode("B-005");
+        batch.setProduct(p);
+        batch.setBatchDate(LocalDate.now());
+        batch = batchRepository.save(batch);
+
+        unitRepository.insertAvailableUnits(batch.getId(), batch.getBatchCode(), 1, 3);
+        InventoryUnit unit = unitRepository.findByUuid("B-005-2").orElseThrow();
+
+        // New labels carry the compact payload
+        assertEquals(com.mushroom.stockkeeper.util.UnitCode.encode(batch.getId(), 2), unit.getQrCodeContent());
+
+        var compact = com.mushroom.stockkeeper.util.UnitCode.parse(unit.getQrCodeContent());
+        assertTrue(compact.isCompact());
+        assertEquals(batch.getId(), compact.batchId());
+        assertEquals(2, compact.seq());
+        assertEquals(unit.getId(), unitRepository.findByCodeForUpdate(compact).orElseThrow().getId());
+
+        // Labels printed before the compact format still scan
+        var legacy = com.mushroom.stockkeeper.util.UnitCode.parse("U:B-005-2");
+        assertFalse(legacy.isCompact());
+        assertEquals(unit.getId(), unitRepository.findByCode(legacy).orElseThrow().getId());
+        assertEquals(unit.getId(), unitRepository.findByCode(
+                com.mushroom.stockkeeper.util.UnitCode.parse("B-005-2")).orElseThrow().getId());
+    }
+
+    @Test
+    void searchAvailable_ShouldFilterByPrefixAndPageById() {
+        UOM uom = new UOM();
+        uom.setCode("kg6");
+        uomRepository.save(uom);
+
+        Product p = new Product();
+        p.setName("Mushrooms6");
+        p.setSku("MUSH-006");
+        p.setUom(uom);
+        productRepository.save(p);
+
+        HarvestBatch batch = new HarvestBatch();
+        batch.setBatchCode("B-006");
+        batch.setProduct(p);
+        batch.setBatchDate(LocalDate.now());
+        batch = batchRepository.save(batch);
+
+        unitRepository.insertAvailableUnits(batch.getId(), batch.getBatchCode(), 1, 12);
+        InventoryUnit sold = unitRepository.findByBatchIdAndSeq(batch.getId(), 10).orElseThrow();
+        sold.setStatus(InventoryStatus.SOLD);
+        unitRepository.saveAndFlush(sold);
+
+        // B-006-1 and B-006-10..12, without the SOLD one
+        var first = unitRepository.searchAvailable(null, batch.getId(), "B-006-1", 0, 2);
+        assertEquals(List.of("B-006-1", "B-006-11"), first.stream().map(u -> u.uuid()).toList());
+        assertEquals("Mushrooms6", first.get(0).productName());
+
+        var next = unitRepository.searchAvailable(p.getId(), null, "B-006-1", first.get(1).id(), 2);
+        assertEquals(List.of("B-006-12"), next.stream().map(u -> u.uuid()).toList());
+
+        // LIKE wildcards are literal
+        assertTrue(unitRepository.searchAvailable(null, null, "B-006-%", 0, 10).isEmpty());
+        assertEquals(11, unitRepository.searchAvailable(null, null, "B-006", 0, 20).size());
+    }
 }
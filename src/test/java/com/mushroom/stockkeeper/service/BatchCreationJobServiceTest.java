@@ -0,0 +1,175 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.BatchJobProgress;
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import com.mushroom.stockkeeper.repository.ProductRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.security.test.context.support.WithMockUser;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Not @Transactional: the job commits its chunks on another thread, so test
+// data has to be committed too. Everything created is removed afterwards.
+@SpringBootTest
+public class BatchCreationJobServiceTest {
+
+    @Autowired
+    private BatchCreationJobService jobService;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private BatchStockCounterService counterService;
+
+    @Autowired
+    private BatchDeletionService deletionService;
+
+    @Autowired
+    private InventoryUnitRepository unitRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.HarvestBatchRepository batchRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.UOMRepository uomRepository;
+
+    @MockBean
+    private AuditService auditService;
+
+    private final List<Long> batchIds = new ArrayList<>();
+    private Product product;
+
+    private Product createProduct(String sku) {
+        Product p = new Product();
+        p.setName("Mushrooms Job");
+        p.setSku(sku);
+        p.setUom(uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM uom = new com.mushroom.stockkeeper.model.UOM();
+            uom.setCode("KG");
+            return uomRepository.save(uom);
+        }));
+        p.setDefaultExpiryDays(5);
+        product = productRepository.save(p);
+        return product;
+    }
+
+    private BatchJobProgress awaitJob(Long batchId) throws InterruptedException {
+        for (int i = 0; i < 300 && jobService.isRunning(batchId); i++) {
+            Thread.sleep(100);
+        }
+        return jobService.getProgress(batchId).orElseThrow();
+    }
+
+    @AfterEach
+    @WithMockUser(roles = "ADMIN")
+    void cleanUp() throws Exception {
+        for (Long id : batchIds) {
+            batchService.deleteBatch(id);
+        }
+        if (product != null) {
+            productRepository.delete(product);
+        }
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testStartCreatesUnitsInChunks() throws Exception {
+        int quantity = BatchCreationJobService.CHUNK_SIZE * 2 + 7;
+        HarvestBatch batch = jobService.start(createProduct("MUSH-JOB"), quantity, LocalDate.now());
+        batchIds.add(batch.getId());
+
+        BatchJobProgress progress = awaitJob(batch.getId());
+
+        Assertions.assertEquals("COMPLETED", progress.state());
+        Assertions.assertEquals(quantity, progress.created());
+        Assertions.assertEquals(100, progress.percent());
+        Assertions.assertEquals(quantity, unitRepository.countByBatchId(batch.getId()));
+        Assertions.assertEquals(quantity, counterService.get(batch.getId()).getAvailable());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testResumeContinuesFromLastCommittedUnit() throws Exception {
+        // Simulates a job that died after its first chunk
+        HarvestBatch batch = batchService.createBatchHeader(createProduct("MUSH-RESUME"), 12, LocalDate.now());
+        batchIds.add(batch.getId());
+        batchService.appendUnits(batch.getId(), batch.getBatchCode(), 1, 5);
+
+        jobService.resume(batch.getId());
+        BatchJobProgress progress = awaitJob(batch.getId());
+
+        Assertions.assertEquals("COMPLETED", progress.state());
+        Assertions.assertEquals(12, unitRepository.countByBatchId(batch.getId()));
+        Assertions.assertTrue(unitRepository.findByBatchIdAndSeq(batch.getId(), 12).isPresent());
+        Assertions.assertEquals(12, counterService.get(batch.getId()).getAvailable());
+
+        Exception e = Assertions.assertThrows(Exception.class, () -> jobService.resume(batch.getId()));
+        Assertions.assertTrue(e.getMessage().contains("already has all"));
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testResumeRefusesBatchBeingDeleted() throws Exception {
+        HarvestBatch batch = batchService.createBatchHeader(createProduct("MUSH-RESUME-DEL"), 12, LocalDate.now());
+        batchIds.add(batch.getId());
+        batchService.appendUnits(batch.getId(), batch.getBatchCode(), 1, 5);
+        batch.setDeletionStartedAt(java.time.LocalDateTime.now());
+        batchRepository.save(batch);
+
+        Exception e = Assertions.assertThrows(Exception.class, () -> jobService.resume(batch.getId()));
+        Assertions.assertTrue(e.getMessage().contains("being deleted"));
+        Assertions.assertEquals(5, unitRepository.countByBatchId(batch.getId()));
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testDeleteRefusesBatchWhileUnitsAreCreated() throws Exception {
+        HarvestBatch batch = batchService.createBatchHeader(createProduct("MUSH-JOB-DEL"), 12, LocalDate.now());
+        batchIds.add(batch.getId());
+        batchService.appendUnits(batch.getId(), batch.getBatchCode(), 1, 5);
+
+        // As a job does between its start and its last chunk
+        Assertions.assertTrue(deletionService.startCreating(batch.getId()));
+        Exception e = Assertions.assertThrows(Exception.class, () -> batchService.deleteBatch(batch.getId()));
+        Assertions.assertTrue(e.getMessage().contains("still being created"));
+        Assertions.assertNull(batchRepository.findById(batch.getId()).orElseThrow().getDeletionStartedAt());
+        deletionService.finishCreating(batch.getId());
+    }
+
+    @Test
+    @WithMockUser(roles = "ADMIN")
+    public void testConcurrentFirstReadsBuildOneCounter() throws Exception {
+        HarvestBatch batch = batchService.createBatch(createProduct("MUSH-LAZY"), 6, LocalDate.now());
+        batchIds.add(batch.getId());
+        // A batch from before counters existed
+        counterService.remove(batch.getId());
+
+        java.util.concurrent.CountDownLatch start = new java.util.concurrent.CountDownLatch(1);
+        List<java.util.concurrent.Future<Long>> reads = new ArrayList<>();
+        try (var pool = java.util.concurrent.Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                reads.add(pool.submit(() -> {
+                    start.await();
+                    return counterService.get(batch.getId()).getAvailable();
+                }));
+            }
+            start.countDown();
+            for (java.util.concurrent.Future<Long> read : reads) {
+                Assertions.assertEquals(6, read.get());
+            }
+        }
+    }
+}
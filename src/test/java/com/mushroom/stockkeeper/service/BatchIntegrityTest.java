@@ -9,6 +9,7 @@ import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
 import com.mushroom.stockkeeper.repository.ProductRepository;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
@@ -36,6 +37,30 @@ public class BatchIntegrityTest {
     @Autowired
     private com.mushroom.stockkeeper.repository.UOMRepository uomRepository;
 
+    @Autowired
+    private BatchStockCounterService counterService;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.BatchStockCounterRepository counterRepository;
+
+    @Autowired
+    private ExpiryService expiryService;
+
+    @Autowired
+    private BatchDeletionService deletionService;
+
+    @Autowired
+    private ZplLabelService zplLabelService;
+
+    @Autowired
+    private SettingsService settingsService;
+
+    @Autowired
+    private SalesService salesService;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.CustomerRepository customerRepository;
+
     @MockBean
     private AuditService auditService; // Mock audit to keep logs clean
 
@@ -78,6 +103,51 @@ public class BatchIntegrityTest {
         Assertions.assertTrue(first.getUuid().startsWith(batch.getBatchCode()));
     }
 
+    @Test
+    public void testStockCountersTrackTransitions() {
+        Product p = createProduct("Mushrooms Counter", "MUSH-CNT");
+        HarvestBatch batch = batchService.createBatch(p, 4, LocalDate.now());
+
+        Assertions.assertEquals(4, counterService.get(batch.getId()).getAvailable());
+
+        InventoryUnit unit = unitRepository.findByBatchIdAndSeq(batch.getId(), 1).orElseThrow();
+        batchService.markUnitSpoiled(unit.getId());
+
+        var counter = counterService.get(batch.getId());
+        Assertions.assertEquals(3, counter.getAvailable());
+        Assertions.assertEquals(1, counter.getSpoiled());
+
+        // Nothing drifted, and a counter overwritten behind the service's back is repaired
+        Assertions.assertEquals(0, counterService.reconcile());
+        counterRepository.applyDelta(batch.getId(), 96, 0, 0, 0, 0);
+        Assertions.assertEquals(1, counterService.reconcile());
+        Assertions.assertEquals(3, counterService.get(batch.getId()).getAvailable());
+    }
+
+    @Test
+    public void testCreateLargeBatchBulkInsert() {
+        Product p = createProduct("Mushrooms Bulk", "MUSH-BULK");
+
+        HarvestBatch batch = batchService.createBatch(p, 20000, LocalDate.now());
+
+        Assertions.assertEquals(20000, unitRepository.countByBatchId(batch.getId()));
+
+        InventoryUnit last = unitRepository.findByUuid(batch.getBatchCode() + "-20000").orElseThrow();
+        Assertions.assertEquals(InventoryStatus.AVAILABLE, last.getStatus());
+        Assertions.assertEquals(com.mushroom.stockkeeper.util.UnitCode.encode(batch.getId(), 20000),
+                last.getQrCodeContent());
+        Assertions.assertNotNull(last.getCreatedAt());
+        Assertions.assertEquals(0L, last.getVersion());
+    }
+
+    @Test
+    public void testCreateBatchRejectsAboveLimit() {
+        Product p = createProduct("Mushrooms Limit", "MUSH-LIMIT");
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> batchService.createBatch(p, BatchService.MAX_UNITS_PER_BATCH + 1, LocalDate.now()));
+    }
+
     @Test
     @org.springframework.security.test.context.support.WithMockUser(roles = "ADMIN")
     public void testBlockDeleteIfSold() throws Exception {
@@ -90,6 +160,7 @@ public class BatchIntegrityTest {
                 .filter(u -> u.getBatch().getId().equals(batch.getId()))
                 .findFirst().get();
 
+        counterService.record(batch.getId(), InventoryStatus.AVAILABLE, InventoryStatus.SOLD);
         unit.setStatus(InventoryStatus.SOLD);
         unitRepository.save(unit);
 
@@ -113,6 +184,7 @@ public class BatchIntegrityTest {
                 .filter(u -> u.getBatch().getId().equals(batch.getId()))
                 .findFirst().get();
 
+        counterService.record(batch.getId(), InventoryStatus.AVAILABLE, InventoryStatus.SOLD);
         unit.setStatus(InventoryStatus.SOLD);
         unitRepository.save(unit);
 
@@ -124,4 +196,167 @@ public class BatchIntegrityTest {
         System.out.println("Blocked Update Message: " + exception.getMessage());
         Assertions.assertTrue(exception.getMessage().contains("Cannot update batch date"));
     }
+
+    @Test
+    public void testExpirySweepSpoilsAvailableUnitsOfExpiredBatches() {
+        Product p = createProduct("Mushrooms Expiry", "MUSH-EXP");
+        // Expiry days = 5, so a batch harvested 10 days ago expired 5 days ago
+        HarvestBatch expired = batchService.createBatch(p, 4, LocalDate.now().minusDays(10));
+        HarvestBatch fresh = batchService.createBatch(p, 3, LocalDate.now());
+        // Expired too, but its units are being purged
+        HarvestBatch deleting = batchService.createBatch(p, 2, LocalDate.now().minusDays(10));
+        deleting.setDeletionStartedAt(java.time.LocalDateTime.now());
+        batchRepository.saveAndFlush(deleting);
+
+        InventoryUnit sold = unitRepository.findByBatchIdAndSeq(expired.getId(), 1).orElseThrow();
+        counterService.record(expired.getId(), InventoryStatus.AVAILABLE, InventoryStatus.SOLD);
+        sold.setStatus(InventoryStatus.SOLD);
+        unitRepository.saveAndFlush(sold);
+
+        Assertions.assertEquals(3, expiryService.expireStock());
+
+        Assertions.assertEquals(3, counterService.get(expired.getId()).getSpoiled());
+        Assertions.assertEquals(1, counterService.get(expired.getId()).getSold());
+        Assertions.assertEquals(0, unitRepository.countByBatchIdAndStatusNot(fresh.getId(), InventoryStatus.AVAILABLE));
+        Assertions.assertEquals(0, unitRepository.countByBatchIdAndStatusNot(deleting.getId(), InventoryStatus.AVAILABLE));
+        Mockito.verify(auditService).log(Mockito.eq("STOCK_EXPIRED"), Mockito.contains(expired.getBatchCode()));
+
+        // Nothing left to expire on the next run
+        Assertions.assertEquals(0, expiryService.expireStock());
+        Assertions.assertEquals(0, counterService.reconcile());
+    }
+
+    @Test
+    @org.springframework.security.test.context.support.WithMockUser(roles = "ADMIN")
+    public void testChunkedDeleteRemovesBatchAndUnits() throws Exception {
+        Product p = createProduct("Mushrooms Delete", "MUSH-DEL");
+        HarvestBatch batch = batchService.createBatch(p, BatchDeletionService.CHUNK_SIZE * 2 + 500, LocalDate.now());
+
+        batchService.deleteBatch(batch.getId());
+
+        Assertions.assertEquals(0, unitRepository.countByBatchId(batch.getId()));
+        Assertions.assertTrue(batchRepository.findById(batch.getId()).isEmpty());
+        Assertions.assertTrue(counterRepository.findSnapshot(batch.getId()).isEmpty());
+    }
+
+    @Test
+    @org.springframework.security.test.context.support.WithMockUser(roles = "ADMIN")
+    public void testDeleteBlockedAfterMarkingUnmarksBatch() throws Exception {
+        Product p = createProduct("Mushrooms Blocked", "MUSH-DEL-B");
+        HarvestBatch batch = batchService.createBatch(p, 5, LocalDate.now());
+
+        // Allocated after the usage check, before the purge reached it
+        batch.setDeletionStartedAt(java.time.LocalDateTime.now());
+        batchRepository.saveAndFlush(batch);
+        InventoryUnit unit = unitRepository.findByBatchIdAndSeq(batch.getId(), 1).orElseThrow();
+        counterService.record(batch.getId(), InventoryStatus.AVAILABLE, InventoryStatus.ALLOCATED);
+        unit.setStatus(InventoryStatus.ALLOCATED);
+        unitRepository.saveAndFlush(unit);
+
+        // Nothing else changes the batch underneath the purge
+        Long otherUnitId = unitRepository.findByBatchIdAndSeq(batch.getId(), 2).orElseThrow().getId();
+        Assertions.assertThrows(IllegalStateException.class, () -> batchService.markUnitSpoiled(otherUnitId));
+        Assertions.assertThrows(Exception.class,
+                () -> batchService.updateBatch(batch.getId(), LocalDate.now().minusDays(1)));
+
+        Exception e = Assertions.assertThrows(Exception.class, () -> batchService.deleteBatch(batch.getId()));
+        Assertions.assertTrue(e.getMessage().contains("1 units"));
+
+        HarvestBatch kept = batchRepository.findById(batch.getId()).orElseThrow();
+        Assertions.assertNull(kept.getDeletionStartedAt());
+        Assertions.assertEquals(1, unitRepository.countByBatchId(batch.getId()));
+        Assertions.assertEquals(0, counterService.get(batch.getId()).getAvailable());
+        Assertions.assertEquals(1, counterService.get(batch.getId()).getAllocated());
+    }
+
+    @Test
+    public void testInterruptedDeleteIsResumed() {
+        Product p = createProduct("Mushrooms Resume", "MUSH-DEL-R");
+        HarvestBatch batch = batchService.createBatch(p, 1500, LocalDate.now());
+
+        // Simulates a delete that stopped after its first chunk
+        batch.setDeletionStartedAt(java.time.LocalDateTime.now());
+        batchRepository.saveAndFlush(batch);
+        unitRepository.deleteAvailableUnitsChunk(batch.getId(), BatchDeletionService.CHUNK_SIZE);
+
+        deletionService.resumePending();
+
+        Assertions.assertEquals(0, unitRepository.countByBatchId(batch.getId()));
+        Assertions.assertTrue(batchRepository.findById(batch.getId()).isEmpty());
+    }
+
+    @Test
+    public void testZplLabelsForSeqRange() throws Exception {
+        Product p = createProduct("Mushrooms Zpl", "MUSH-ZPL");
+        p.setMrp(new java.math.BigDecimal("45.00"));
+        productRepository.save(p);
+        HarvestBatch batch = batchService.createBatch(p, ZplLabelService.CHUNK_SIZE + 20, LocalDate.now());
+
+        java.io.ByteArrayOutputStream out = new java.io.ByteArrayOutputStream();
+        int sent = zplLabelService.write(batch.getId(), 490, 510, out);
+        String zpl = out.toString(java.nio.charset.StandardCharsets.UTF_8);
+
+        Assertions.assertEquals(21, sent);
+        Assertions.assertEquals(21, zpl.split("\\^XZ").length - 1);
+        Assertions.assertTrue(zpl.contains("^FDMA," + com.mushroom.stockkeeper.util.UnitCode.encode(batch.getId(), 490) + "^FS"));
+        Assertions.assertTrue(zpl.contains("MRP: 45.00"));
+        Assertions.assertFalse(zpl.contains(batch.getBatchCode() + "-511^FS"));
+
+        // Whole batch to a spool file, crossing a chunk boundary
+        java.nio.file.Path spool = java.nio.file.Files.createTempFile("labels", ".zpl");
+        settingsService.updateSetting(SettingsService.KEY_TARGET_PRINTER, "file:" + spool);
+        Assertions.assertEquals(ZplLabelService.CHUNK_SIZE + 20, zplLabelService.print(batch.getId(), null, null));
+        Assertions.assertTrue(java.nio.file.Files.readString(spool).endsWith("^XZ\n"));
+        java.nio.file.Files.delete(spool);
+    }
+
+    @Test
+    public void testAllocateByQuantityTakesOldestUnexpiredFirst() throws Exception {
+        Product p = createProduct("Mushrooms Qty", "MUSH-QTY");
+        p.setWholesalePrice(new java.math.BigDecimal("8.00"));
+        productRepository.save(p);
+        // Default expiry is 5 days after the batch date
+        HarvestBatch expired = batchService.createBatch(p, 4, LocalDate.now().minusDays(10));
+        HarvestBatch newer = batchService.createBatch(p, 4, LocalDate.now());
+        HarvestBatch older = batchService.createBatch(p, 4, LocalDate.now().minusDays(2));
+
+        com.mushroom.stockkeeper.model.Customer c = new com.mushroom.stockkeeper.model.Customer();
+        c.setName("Qty Wholesale");
+        customerRepository.save(c);
+        var order = salesService.createOrder(c, "WHOLESALE", "CASH");
+
+        Assertions.assertEquals(6, salesService.allocateByQuantity(order.getId(), p.getId(), 6));
+
+        Assertions.assertEquals(0, unitRepository.countByBatchIdAndStatusNot(older.getId(), InventoryStatus.ALLOCATED));
+        Assertions.assertEquals(2, unitRepository.countByBatchIdAndStatusNot(newer.getId(), InventoryStatus.ALLOCATED));
+        Assertions.assertEquals(4, unitRepository.countByBatchIdAndStatusNot(expired.getId(), InventoryStatus.ALLOCATED));
+        InventoryUnit first = unitRepository.findByBatchIdAndSeq(older.getId(), 1).orElseThrow();
+        Assertions.assertEquals(order.getId(), first.getSalesOrder().getId());
+        Assertions.assertEquals(0, new java.math.BigDecimal("8.00").compareTo(first.getSoldPrice()));
+        Assertions.assertEquals(0, counterService.get(older.getId()).getAvailable());
+        Assertions.assertEquals(2, counterService.get(newer.getId()).getAvailable());
+
+        // The picking filters offer only batches with stock left
+        var pickBatches = batchRepository.findPickBatches().stream().map(b -> b.id()).toList();
+        Assertions.assertTrue(pickBatches.contains(newer.getId()));
+        Assertions.assertFalse(pickBatches.contains(older.getId()));
+
+        // Only what is left of unexpired stock
+        Assertions.assertEquals(2, salesService.allocateByQuantity(order.getId(), p.getId(), 10));
+
+        // Picking page delta: one row for the product, 8 units at 8.00
+        var delta = salesService.orderDelta(order.getId(), null, null);
+        Assertions.assertEquals(8, delta.unitCount());
+        Assertions.assertEquals(1, delta.rows().size());
+        Assertions.assertEquals(0, new java.math.BigDecimal("64.00").compareTo(delta.total()));
+
+        // A unit priced differently (scanned after a price change) counts at its own price
+        InventoryUnit repriced = unitRepository.findByBatchIdAndSeq(newer.getId(), 1).orElseThrow();
+        repriced.setSoldPrice(new java.math.BigDecimal("10.00"));
+        unitRepository.saveAndFlush(repriced);
+        delta = salesService.orderDelta(order.getId(), null, null);
+        Assertions.assertEquals(1, delta.rows().size());
+        Assertions.assertEquals(0, new java.math.BigDecimal("66.00").compareTo(delta.subTotal()));
+        Assertions.assertEquals(0, new java.math.BigDecimal("66.00").compareTo(delta.total()));
+    }
 }
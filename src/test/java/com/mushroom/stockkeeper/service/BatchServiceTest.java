@@ -1,5 +1,6 @@
 package com.mushroom.stockkeeper.service;
 
+import com.mushroom.stockkeeper.model.BatchStockCounter;
 import com.mushroom.stockkeeper.model.HarvestBatch;
 import com.mushroom.stockkeeper.model.Product;
 import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
@@ -29,6 +30,12 @@ class BatchServiceTest {
     @Mock
     private AuditService auditService;
 
+    @Mock
+    private BatchStockCounterService counterService;
+
+    @Mock
+    private BatchDeletionService deletionService;
+
     @InjectMocks
     private BatchService batchService;
 
@@ -71,6 +78,7 @@ class BatchServiceTest {
         batch.setBatchDate(LocalDate.now());
 
         when(batchRepository.findById(1L)).thenReturn(Optional.of(batch));
+        when(counterService.get(1L)).thenReturn(new BatchStockCounter());
 
         assertDoesNotThrow(() -> batchService.updateBatch(1L, LocalDate.now().plusDays(1)));
     }
@@ -0,0 +1,166 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.PickSuggestion;
+import com.mushroom.stockkeeper.model.BatchStockCounter;
+import com.mushroom.stockkeeper.repository.BatchStockCounterRepository;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class FefoIndexServiceTest {
+
+    @Mock
+    private HarvestBatchRepository batchRepository;
+
+    @Mock
+    private BatchStockCounterRepository counterRepository;
+
+    @Mock
+    private InventoryUnitRepository unitRepository;
+
+    @InjectMocks
+    private FefoIndexService fefoIndex;
+
+    private final LocalDate today = LocalDate.now();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        // Product 1: batch 10 expires later than batch 11; batch 12 already expired
+        when(batchRepository.findFefoEntries()).thenReturn(List.of(
+                new Object[] { 10L, 1L, today.plusDays(5), "B10" },
+                new Object[] { 11L, 1L, today.plusDays(1), "B11" },
+                new Object[] { 12L, 1L, today.minusDays(1), "B12" }));
+        when(counterRepository.findAllSnapshots()).thenReturn(List.of(
+                counter(10L, 5), counter(11L, 2), counter(12L, 3)));
+        when(unitRepository.findAvailableUuids(anyMap())).thenAnswer(inv -> {
+            Map<Long, List<String>> uuids = new HashMap<>();
+            inv.<Map<Long, Integer>>getArgument(0).forEach((batchId, limit) -> uuids.put(batchId, uuids(batchId, limit)));
+            return uuids;
+        });
+        fefoIndex.rebuild();
+    }
+
+    @Test
+    void suggest_ordersByExpiryAndSkipsExpired() {
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 3);
+
+        assertEquals(2, suggestions.size());
+        assertEquals(11L, suggestions.get(0).batchId());
+        assertEquals(2, suggestions.get(0).uuids().size());
+        assertEquals(10L, suggestions.get(1).batchId());
+        assertEquals(1, suggestions.get(1).uuids().size());
+        // Both batches in one query; the expired one is not read
+        verify(unitRepository, times(1)).findAvailableUuids(Map.of(11L, 3, 10L, 3));
+    }
+
+    @Test
+    void suggest_readsFurtherBatchesWhenCountWasHigh() {
+        // Batch 11 still counts 2 but its units are gone already
+        when(unitRepository.findAvailableUuids(Map.of(11L, 2))).thenReturn(Map.of(11L, List.of()));
+        fefoIndex.onAvailableChanged(10L, -5);
+
+        assertTrue(fefoIndex.suggest(1L, 2).isEmpty());
+
+        fefoIndex.onAvailableChanged(10L, 5);
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 2);
+        assertEquals(1, suggestions.size());
+        assertEquals(10L, suggestions.get(0).batchId());
+        verify(unitRepository).findAvailableUuids(Map.of(10L, 2));
+    }
+
+    @Test
+    void rebuild_rereadsBatchesChangedWhileReading() {
+        // An allocation of batch 11 commits while the rebuild reads the counters
+        when(counterRepository.findAllSnapshots()).thenAnswer(inv -> {
+            fefoIndex.onAvailableChanged(11L, -2);
+            return List.of(counter(10L, 5), counter(11L, 2), counter(12L, 3));
+        });
+        when(batchRepository.findFefoEntries(anyCollection())).thenReturn(List.<Object[]>of(
+                new Object[] { 11L, 1L, today.plusDays(1), "B11" }));
+        when(counterRepository.findSnapshots(anyCollection())).thenReturn(List.of(counter(11L, 0)));
+
+        fefoIndex.rebuild();
+
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 3);
+        assertEquals(1, suggestions.size());
+        assertEquals(10L, suggestions.get(0).batchId());
+        verify(counterRepository).findSnapshots(List.of(11L));
+    }
+
+    @Test
+    void onAvailableChanged_skipsEmptiedBatch() {
+        fefoIndex.onAvailableChanged(11L, -2);
+
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 3);
+
+        assertEquals(1, suggestions.size());
+        assertEquals(10L, suggestions.get(0).batchId());
+    }
+
+    @Test
+    void onBatchChanged_reloadsOnNextSuggest() {
+        // Batch 11 was deleted: the reload finds nothing for it
+        when(batchRepository.findFefoEntries(anyCollection())).thenReturn(List.of());
+        when(counterRepository.findSnapshots(anyCollection())).thenReturn(List.of());
+
+        fefoIndex.onBatchChanged(11L);
+
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 10);
+        assertEquals(1, suggestions.size());
+        assertEquals(10L, suggestions.get(0).batchId());
+        assertTrue(fefoIndex.suggest(2L, 10).isEmpty());
+    }
+
+    @Test
+    void resolvePending_rereadsBatchChangedWhileReading() {
+        when(batchRepository.findFefoEntries(anyCollection())).thenReturn(List.<Object[]>of(
+                new Object[] { 11L, 1L, today.plusDays(1), "B11" }));
+        // Batch 11's last units are allocated while its count is being read
+        when(counterRepository.findSnapshots(anyCollection()))
+                .thenAnswer(inv -> {
+                    fefoIndex.onAvailableChanged(11L, -2);
+                    return List.of(counter(11L, 2));
+                })
+                .thenReturn(List.of(counter(11L, 0)));
+
+        fefoIndex.onBatchChanged(11L);
+        fefoIndex.suggest(1L, 3);
+
+        List<PickSuggestion> suggestions = fefoIndex.suggest(1L, 3);
+        assertEquals(1, suggestions.size());
+        assertEquals(10L, suggestions.get(0).batchId());
+        verify(counterRepository, times(2)).findSnapshots(List.of(11L));
+    }
+
+    private static BatchStockCounter counter(Long batchId, long available) {
+        BatchStockCounter c = new BatchStockCounter();
+        c.setBatchId(batchId);
+        c.setAvailable(available);
+        return c;
+    }
+
+    // Batch 10 holds 5 AVAILABLE units, every other batch 2
+    private static List<String> uuids(Long batchId, int limit) {
+        return java.util.stream.IntStream.rangeClosed(1, Math.min(limit, batchId == 10L ? 5 : 2))
+                .mapToObj(i -> "B" + batchId + "-" + i)
+                .toList();
+    }
+}
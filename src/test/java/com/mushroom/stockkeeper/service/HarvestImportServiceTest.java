@@ -0,0 +1,106 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.HarvestImportResult;
+import com.mushroom.stockkeeper.dto.HarvestImportRow;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.repository.HarvestBatchRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import com.mushroom.stockkeeper.repository.ProductRepository;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.StringReader;
+import java.time.LocalDate;
+import java.util.List;
+
+@SpringBootTest
+@Transactional
+public class HarvestImportServiceTest {
+
+    @Autowired
+    private HarvestImportService importService;
+
+    @Autowired
+    private HarvestBatchRepository batchRepository;
+
+    @Autowired
+    private InventoryUnitRepository unitRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.UOMRepository uomRepository;
+
+    @MockBean
+    private AuditService auditService;
+
+    private Product createProduct(String name, String sku) {
+        com.mushroom.stockkeeper.model.UOM uom = uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM newUom = new com.mushroom.stockkeeper.model.UOM();
+            newUom.setCode("KG");
+            return uomRepository.save(newUom);
+        });
+
+        Product p = new Product();
+        p.setName(name);
+        p.setSku(sku);
+        p.setUom(uom);
+        p.setDefaultExpiryDays(5);
+        return productRepository.save(p);
+    }
+
+    @Test
+    public void testImportReportsPerLineResults() throws Exception {
+        createProduct("Oyster Import", "IMP-OYS");
+        String csv = String.join("\n",
+                "sku,quantity,batchDate",
+                "imp-oys,10," + LocalDate.now().minusDays(1),
+                "IMP-OYS,5,",
+                "",
+                "NOPE,5,",
+                "IMP-OYS,abc,",
+                "IMP-OYS,5," + LocalDate.now().plusDays(3),
+                "IMP-OYS,5,2024-13-01");
+
+        HarvestImportResult result = importService.importCsv(new StringReader(csv));
+
+        List<HarvestImportRow> rows = result.rows();
+        Assertions.assertEquals(6, rows.size());
+        Assertions.assertEquals(2, result.batchesCreated());
+        Assertions.assertEquals(15, result.unitsCreated());
+        Assertions.assertEquals(4, result.getFailed());
+
+        Assertions.assertTrue(rows.get(0).isOk());
+        Assertions.assertEquals(LocalDate.now().minusDays(1), rows.get(0).batchDate());
+        Assertions.assertEquals(10, unitRepository.countByBatchId(
+                batchRepository.findByBatchCode(rows.get(0).batchCode()).orElseThrow().getId()));
+        Assertions.assertEquals(LocalDate.now(), rows.get(1).batchDate());
+
+        Assertions.assertEquals(5, rows.get(2).line());
+        Assertions.assertEquals("Unknown SKU", rows.get(2).error());
+        Assertions.assertTrue(rows.get(3).error().startsWith("Invalid quantity"));
+        Assertions.assertTrue(rows.get(4).error().contains("future"));
+        Assertions.assertTrue(rows.get(5).error().startsWith("Invalid date"));
+    }
+
+    @Test
+    public void testImportThroughput() throws Exception {
+        createProduct("Shiitake Import", "IMP-SHI");
+        StringBuilder csv = new StringBuilder("sku,quantity,batchDate\n");
+        for (int i = 0; i < 100; i++) {
+            csv.append("IMP-SHI,500,").append(LocalDate.now()).append('\n');
+        }
+
+        HarvestImportResult result = importService.importCsv(new StringReader(csv.toString()));
+
+        Assertions.assertEquals(100, result.batchesCreated());
+        Assertions.assertEquals(50000, result.unitsCreated());
+        // Batches created in the same millisecond still get distinct codes
+        Assertions.assertEquals(100, result.rows().stream().map(HarvestImportRow::batchCode).distinct().count());
+    }
+}
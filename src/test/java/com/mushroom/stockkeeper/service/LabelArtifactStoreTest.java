@@ -0,0 +1,64 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.Product;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LabelArtifactStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private HarvestBatch batch(Long id) {
+        Product product = new Product();
+        product.setName("Oyster");
+        HarvestBatch batch = new HarvestBatch();
+        batch.setId(id);
+        batch.setBatchCode("B" + id);
+        batch.setBatchDate(LocalDate.of(2026, 1, 1));
+        batch.setProduct(product);
+        return batch;
+    }
+
+    @Test
+    void fingerprint_changesWithLabelData() throws Exception {
+        LabelArtifactStore store = new LabelArtifactStore(dir);
+        HarvestBatch batch = batch(1L);
+
+        String base = store.fingerprint(batch, 10, Map.of("labelSheetSize", "A4_40"));
+        assertEquals(base, store.fingerprint(batch, 10, Map.of("labelSheetSize", "A4_40")));
+        assertNotEquals(base, store.fingerprint(batch, 11, Map.of("labelSheetSize", "A4_40")));
+        assertNotEquals(base, store.fingerprint(batch, 10, Map.of("labelSheetSize", "A4_24")));
+
+        batch.getProduct().setMrp(new java.math.BigDecimal("49"));
+        assertNotEquals(base, store.fingerprint(batch, 10, Map.of("labelSheetSize", "A4_40")));
+    }
+
+    @Test
+    void store_replacesSheetsOfOlderFingerprintsOfTheSameBatchOnly() throws Exception {
+        LabelArtifactStore store = new LabelArtifactStore(dir);
+
+        Path old = store.store(1L, "aaa", 1, "<html>old</html>");
+        store.store(12L, "ccc", 1, "<html>other</html>");
+        Path job1 = store.store(1L, "bbb", 1, "<html>new 1</html>");
+        Path job2 = store.store(1L, "bbb", 2, "<html>new 2</html>");
+
+        assertFalse(Files.exists(old));
+        assertEquals("<html>new 1</html>", Files.readString(job1));
+        assertEquals(job1, store.find(1L, "bbb", 1).orElseThrow());
+        assertEquals(job2, store.find(1L, "bbb", 2).orElseThrow());
+        assertTrue(store.find(1L, "aaa", 1).isEmpty());
+
+        store.evict(1L);
+        assertTrue(store.find(1L, "bbb", 1).isEmpty());
+        assertTrue(store.find(12L, "ccc", 1).isPresent());
+    }
+}
@@ -0,0 +1,143 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.model.Customer;
+import com.mushroom.stockkeeper.model.HarvestBatch;
+import com.mushroom.stockkeeper.model.InventoryStatus;
+import com.mushroom.stockkeeper.model.InventoryUnit;
+import com.mushroom.stockkeeper.model.Product;
+import com.mushroom.stockkeeper.model.SalesOrder;
+import com.mushroom.stockkeeper.repository.CustomerRepository;
+import com.mushroom.stockkeeper.repository.InventoryUnitRepository;
+import com.mushroom.stockkeeper.repository.ProductRepository;
+import com.mushroom.stockkeeper.util.UnitCode;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@SpringBootTest(properties = "stockkeeper.sales.optimistic-claim=true")
+@Transactional
+class OptimisticClaimTest {
+
+    @Autowired
+    private SalesService salesService;
+
+    @Autowired
+    private BatchService batchService;
+
+    @Autowired
+    private BatchStockCounterService counterService;
+
+    @Autowired
+    private InventoryUnitRepository unitRepository;
+
+    @Autowired
+    private ProductRepository productRepository;
+
+    @Autowired
+    private CustomerRepository customerRepository;
+
+    @Autowired
+    private com.mushroom.stockkeeper.repository.UOMRepository uomRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @MockBean
+    private AuditService auditService;
+
+    private SalesOrder order(String orderType) {
+        Customer c = new Customer();
+        c.setName("Claim " + orderType);
+        customerRepository.save(c);
+        return salesService.createOrder(c, orderType, "CASH");
+    }
+
+    @Test
+    void allocateUnit_ShouldClaimWithConditionalUpdate() throws Exception {
+        Product p = new Product();
+        p.setName("Mushrooms Claim");
+        p.setSku("MUSH-CLAIM");
+        p.setUom(uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM uom = new com.mushroom.stockkeeper.model.UOM();
+            uom.setCode("KG");
+            return uomRepository.save(uom);
+        }));
+        p.setRetailPrice(new BigDecimal("12.50"));
+        p.setWholesalePrice(new BigDecimal("9.00"));
+        p.setDefaultExpiryDays(5);
+        productRepository.save(p);
+        HarvestBatch batch = batchService.createBatch(p, 3, LocalDate.now());
+
+        SalesOrder wholesale = order("WHOLESALE");
+        SalesOrder retail = order("RETAIL");
+
+        salesService.allocateUnit(wholesale.getId(), UnitCode.encode(batch.getId(), 1));
+        salesService.allocateUnit(retail.getId(), "U:" + batch.getBatchCode() + "-2");
+        // Re-scan into the same order is accepted
+        salesService.allocateUnit(wholesale.getId(), UnitCode.encode(batch.getId(), 1));
+
+        entityManager.clear();
+        InventoryUnit first = unitRepository.findByBatchIdAndSeq(batch.getId(), 1).orElseThrow();
+        Assertions.assertEquals(InventoryStatus.ALLOCATED, first.getStatus());
+        Assertions.assertEquals(wholesale.getId(), first.getSalesOrder().getId());
+        Assertions.assertEquals(0, new BigDecimal("9.00").compareTo(first.getSoldPrice()));
+        Assertions.assertEquals(1L, first.getVersion());
+        InventoryUnit second = unitRepository.findByBatchIdAndSeq(batch.getId(), 2).orElseThrow();
+        Assertions.assertEquals(0, new BigDecimal("12.50").compareTo(second.getSoldPrice()));
+        Assertions.assertEquals(1, counterService.get(batch.getId()).getAvailable());
+
+        // Taken by another order
+        Exception taken = Assertions.assertThrows(Exception.class,
+                () -> salesService.allocateUnit(retail.getId(), UnitCode.encode(batch.getId(), 1)));
+        Assertions.assertTrue(taken.getMessage().contains("not AVAILABLE"));
+
+        Exception missing = Assertions.assertThrows(Exception.class,
+                () -> salesService.allocateUnit(retail.getId(), UnitCode.encode(batch.getId(), 99)));
+        Assertions.assertTrue(missing.getMessage().contains("Unit not found"));
+
+        Exception noOrder = Assertions.assertThrows(Exception.class,
+                () -> salesService.allocateUnit(-1L, UnitCode.encode(batch.getId(), 3)));
+        Assertions.assertEquals("Order not found", noOrder.getMessage());
+        Assertions.assertEquals(1, counterService.get(batch.getId()).getAvailable());
+    }
+
+    @Test
+    void claim_ShouldNotTakeAUnitWhoseVersionMoved() throws Exception {
+        Product p = new Product();
+        p.setName("Mushrooms Stale");
+        p.setSku("MUSH-STALE");
+        p.setUom(uomRepository.findByCode("KG").orElseGet(() -> {
+            com.mushroom.stockkeeper.model.UOM uom = new com.mushroom.stockkeeper.model.UOM();
+            uom.setCode("KG");
+            return uomRepository.save(uom);
+        }));
+        p.setRetailPrice(new BigDecimal("4.00"));
+        productRepository.save(p);
+        HarvestBatch batch = batchService.createBatch(p, 1, LocalDate.now());
+        SalesOrder mine = order("RETAIL");
+        SalesOrder other = order("WHOLESALE");
+        String code = UnitCode.encode(batch.getId(), 1);
+
+        var read = unitRepository.findClaim(UnitCode.parse(code), mine.getId()).orElseThrow();
+        Assertions.assertEquals(0, new BigDecimal("4.00").compareTo(read.price()));
+
+        // Another order takes and releases the unit in between: AVAILABLE again, newer version
+        salesService.allocateUnit(other.getId(), code);
+        salesService.removeUnit(read.unitId());
+        entityManager.flush();
+
+        Assertions.assertEquals(0, unitRepository.claim(read.unitId(), read.version(), mine, read.price(),
+                LocalDate.now()));
+        salesService.allocateUnit(mine.getId(), code);
+        entityManager.clear();
+        Assertions.assertEquals(mine.getId(), unitRepository.findById(read.unitId()).orElseThrow()
+                .getSalesOrder().getId());
+    }
+}
@@ -0,0 +1,86 @@
+package com.mushroom.stockkeeper.service;
+
+import com.mushroom.stockkeeper.dto.QrCacheStats;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QrCodeServiceTest {
+
+    @Test
+    void generateQrCodeImage_servesRepeatsFromCache() throws Exception {
+        QrCodeService service = new QrCodeService(1024 * 1024, 2);
+
+        byte[] first = service.generateQrCodeImage("M:ABC", 150, 150);
+        byte[] second = service.generateQrCodeImage("M:ABC", 150, 150);
+        byte[] larger = service.generateQrCodeImage("M:ABC", 300, 300);
+
+        assertSame(first, second);
+        assertTrue(larger.length > 0);
+        QrCacheStats stats = service.getCacheStats();
+        assertEquals(1, stats.hits());
+        assertEquals(2, stats.misses());
+        assertEquals(2, stats.entries());
+        assertEquals(first.length + larger.length, stats.bytes());
+    }
+
+    @Test
+    void generateQrCodeImage_evictsLeastRecentlyUsedWithinBudget() throws Exception {
+        byte[] sample = new QrCodeService(0, 2).generateQrCodeImage("M:1", 150, 150);
+        // Room for roughly two images
+        QrCodeService service = new QrCodeService(sample.length * 2 + sample.length / 2, 2);
+
+        byte[] a = service.generateQrCodeImage("M:1", 150, 150);
+        service.generateQrCodeImage("M:2", 150, 150);
+        service.generateQrCodeImage("M:1", 150, 150); // M:1 is now the most recent
+        service.generateQrCodeImage("M:3", 150, 150); // Evicts M:2
+
+        QrCacheStats stats = service.getCacheStats();
+        assertEquals(2, stats.entries());
+        assertEquals(1, stats.evictions());
+        assertTrue(stats.bytes() <= stats.maxBytes());
+        assertSame(a, service.generateQrCodeImage("M:1", 150, 150));
+        assertArrayEquals(a, sample);
+    }
+
+    @Test
+    void generateQrCodeImage_rendersConcurrentMissesOnTheBoundedPool() throws Exception {
+        QrCodeService service = new QrCodeService(1024 * 1024, 2);
+        java.util.List<java.util.concurrent.Callable<byte[]>> sheet = new java.util.ArrayList<>();
+        for (int i = 1; i <= 100; i++) {
+            String content = "M:" + i;
+            sheet.add(() -> service.generateQrCodeImage(content, 150, 150));
+        }
+
+        try (var requests = java.util.concurrent.Executors.newVirtualThreadPerTaskExecutor()) {
+            for (var image : requests.invokeAll(sheet)) {
+                assertTrue(image.get().length > 0);
+            }
+        }
+        assertEquals(100, service.getCacheStats().misses());
+        // Encoding errors reach the caller as thrown by the encoder
+        assertThrows(IllegalArgumentException.class, () -> service.generateQrCodeImage("", 150, 150));
+        service.shutdown();
+    }
+
+    @Test
+    void generateQrCodeSvg_drawsOnePathIndependentOfPixelSize() throws Exception {
+        QrCodeService service = new QrCodeService(1024 * 1024, 2);
+        String content = com.mushroom.stockkeeper.util.UnitCode.encode(42L, 1234);
+
+        String svg = service.generateQrCodeSvg(content, 150, 150);
+        String large = service.generateQrCodeSvg(content, 600, 600);
+
+        assertTrue(svg.startsWith("<svg "));
+        assertTrue(svg.contains("width=\"150\""));
+        assertEquals(1, svg.split("<path ").length - 1);
+        // Only the size attributes differ, unlike a PNG that grows with its pixels
+        assertEquals(svg.replace("150", "600"), large);
+        assertEquals(svg, service.generateQrCodeSvg(content, 150, 150));
+        assertEquals(1, service.getCacheStats().hits());
+    }
+}
@@ -5,7 +5,6 @@ import com.mushroom.stockkeeper.repository.*;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import java.math.BigDecimal;
@@ -32,8 +31,15 @@ class SalesServiceTest {
     private CreditNoteRepository creditNoteRepository;
     @Mock
     private AuditService auditService;
+    @Mock
+    private BatchStockCounterService counterService;
+    @Mock
+    private HarvestBatchRepository batchRepository;
+    @Mock
+    private OrderSessionHub sessionHub;
+    @Mock
+    private ScanReceiptStore scanReceipts;
 
-    @InjectMocks
     private SalesService salesService;
 
     private Customer retailCustomer;
@@ -44,6 +50,11 @@ class SalesServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Locking scan path (stockkeeper.sales.optimistic-claim=false)
+        salesService = new SalesService(orderRepository, unitRepository, invoiceRepository, paymentRepository,
+                creditNoteRepository, auditService, counterService, batchRepository, sessionHub,
+                scanReceipts, false);
+
         // Setup Common Data
         retailCustomer = new Customer();
         retailCustomer.setId(1L);
@@ -71,6 +82,9 @@ class SalesServiceTest {
         unit.setUuid("U:123");
         unit.setBatch(batch);
         unit.setStatus(InventoryStatus.AVAILABLE);
+
+        // Scanned-code lookup dispatches to the uuid / (batchId, seq) queries stubbed below
+        lenient().when(unitRepository.findByCodeForUpdate(any())).thenCallRealMethod();
     }
 
     @Test
@@ -120,6 +134,22 @@ class SalesServiceTest {
         assertEquals(new BigDecimal("8.00"), unit.getSoldPrice());
     }
 
+    @Test
+    void allocateUnit_ShouldResolveCompactPayloadByBatchAndSeq() throws Exception {
+        SalesOrder order = new SalesOrder();
+        order.setId(1L);
+        order.setOrderType("RETAIL");
+        order.setStatus(SalesOrderStatus.DRAFT);
+
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        when(unitRepository.findByBatchIdAndSeqForUpdate(50L, 17)).thenReturn(Optional.of(unit));
+
+        salesService.allocateUnit(1L, com.mushroom.stockkeeper.util.UnitCode.encode(50L, 17));
+
+        assertEquals(InventoryStatus.ALLOCATED, unit.getStatus());
+        verify(unitRepository, never()).findByUuidForUpdate(any());
+    }
+
     @Test
     void allocateUnit_ShouldFail_IfUnitNotAvailable() {
         unit.setStatus(InventoryStatus.SOLD);
@@ -133,6 +163,77 @@ class SalesServiceTest {
         assertTrue(exception.getMessage().contains("not AVAILABLE"));
     }
 
+    @Test
+    void allocateUnits_ShouldLockOnceAndReportEachCode() throws Exception {
+        SalesOrder order = new SalesOrder();
+        order.setId(1L);
+        order.setOrderType("RETAIL");
+        order.setStatus(SalesOrderStatus.DRAFT);
+
+        InventoryUnit sold = new InventoryUnit();
+        sold.setId(501L);
+        sold.setUuid("B-1-2");
+        sold.setBatch(batch);
+        sold.setStatus(InventoryStatus.SOLD);
+
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        when(unitRepository.findIdsByUuidIn(any())).thenReturn(java.util.List.<Object[]>of(
+                new Object[] { 501L, "B-1-2" }));
+        when(unitRepository.findIdsByBatchIdInAndSeqIn(any(), any())).thenReturn(java.util.List.<Object[]>of(
+                new Object[] { 500L, 50L, 17 }));
+        when(unitRepository.findAllByIdForUpdate(java.util.Set.of(500L, 501L)))
+                .thenReturn(java.util.List.of(unit, sold));
+
+        String compact = com.mushroom.stockkeeper.util.UnitCode.encode(50L, 17);
+        java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> results = salesService.allocateUnits(1L,
+                java.util.List.of(compact, "U:B-1-2", "U:B-1-3", compact));
+
+        assertEquals(4, results.size());
+        assertTrue(results.get(0).allocated());
+        assertEquals("U:123", results.get(0).uuid());
+        assertFalse(results.get(1).allocated());
+        assertTrue(results.get(1).message().contains("not AVAILABLE"));
+        assertFalse(results.get(2).allocated());
+        assertTrue(results.get(2).message().contains("not found"));
+        // A repeated code is already in this order
+        assertTrue(results.get(3).allocated());
+
+        assertEquals(InventoryStatus.ALLOCATED, unit.getStatus());
+        assertEquals(new BigDecimal("10.00"), unit.getSoldPrice());
+        verify(unitRepository, times(1)).findAllByIdForUpdate(any());
+        verify(unitRepository, never()).findByCodeForUpdate(any());
+        verify(counterService).record(50L, InventoryStatus.AVAILABLE, InventoryStatus.ALLOCATED, 1L);
+        verify(unitRepository).saveAll(java.util.List.of(unit));
+    }
+
+    @Test
+    void syncScans_ShouldAnswerKnownKeysFromReceipts() throws Exception {
+        SalesOrder order = new SalesOrder();
+        order.setId(1L);
+        order.setOrderType("RETAIL");
+        order.setStatus(SalesOrderStatus.DRAFT);
+
+        com.mushroom.stockkeeper.dto.AllocationResult synced = new com.mushroom.stockkeeper.dto.AllocationResult(
+                "U:123", "123", true, null);
+        when(scanReceipts.get(1L, "k1")).thenReturn(synced);
+        when(orderRepository.findById(1L)).thenReturn(Optional.of(order));
+        when(unitRepository.findIdsByUuidIn(any())).thenReturn(java.util.List.of());
+
+        java.util.List<com.mushroom.stockkeeper.dto.AllocationResult> results = salesService.syncScans(1L,
+                java.util.List.of(new com.mushroom.stockkeeper.dto.QueuedScan("k1", "U:123"),
+                        new com.mushroom.stockkeeper.dto.QueuedScan("k2", "U:B-9-9"),
+                        new com.mushroom.stockkeeper.dto.QueuedScan("k2", "U:B-9-9")));
+
+        assertEquals(3, results.size());
+        assertSame(synced, results.get(0));
+        assertFalse(results.get(1).allocated());
+        assertSame(results.get(1), results.get(2));
+        // Only the new key is resolved, once
+        verify(unitRepository).findIdsByUuidIn(java.util.Set.of("B-9-9"));
+        verify(unitRepository, never()).findAllByIdForUpdate(any());
+        verify(scanReceipts).putAfterCommit(1L, java.util.Map.of("k2", results.get(1)));
+    }
+
     @Test
     void finalizeOrder_ShouldCreateInvoice_WhenPaid() throws Exception {
         SalesOrder order = new SalesOrder();
@@ -0,0 +1,71 @@
+package com.mushroom.stockkeeper.util;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QrPngWriterTest {
+
+    private static byte[] zxingPng(String content, int size) throws Exception {
+        BitMatrix matrix = new QRCodeWriter().encode(content, BarcodeFormat.QR_CODE, size, size);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        MatrixToImageWriter.writeToStream(matrix, "PNG", out);
+        return out.toByteArray();
+    }
+
+    @Test
+    void write_matchesZxingPixelForPixel() throws Exception {
+        for (String content : new String[] { UnitCode.encode(7L, 1), "B20260101-12345", "M:" + "X".repeat(60) }) {
+            for (int size : new int[] { 150, 151, 300, 10 }) {
+                BufferedImage expected = ImageIO.read(new ByteArrayInputStream(zxingPng(content, size)));
+                BufferedImage actual = ImageIO.read(new ByteArrayInputStream(QrPngWriter.write(content, size, size)));
+
+                assertEquals(expected.getWidth(), actual.getWidth());
+                assertEquals(expected.getHeight(), actual.getHeight());
+                for (int y = 0; y < expected.getHeight(); y++) {
+                    for (int x = 0; x < expected.getWidth(); x++) {
+                        assertEquals(expected.getRGB(x, y), actual.getRGB(x, y), content + " @" + size);
+                    }
+                }
+            }
+        }
+    }
+
+    // Stands in for a JMH run: bytes allocated per label by this thread,
+    // after warm-up, for the old and the new path
+    @Test
+    void write_allocatesFarLessPerLabel() throws Exception {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        int labels = 500;
+        for (int i = 0; i < labels; i++) { // Warm-up
+            zxingPng(UnitCode.encode(1L, i + 1), 150);
+            QrPngWriter.write(UnitCode.encode(1L, i + 1), 150, 150);
+        }
+
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < labels; i++) {
+            zxingPng(UnitCode.encode(2L, i + 1), 150);
+        }
+        long zxingPerLabel = (threads.getCurrentThreadAllocatedBytes() - before) / labels;
+
+        before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < labels; i++) {
+            QrPngWriter.write(UnitCode.encode(3L, i + 1), 150, 150);
+        }
+        long directPerLabel = (threads.getCurrentThreadAllocatedBytes() - before) / labels;
+
+        assertTrue(directPerLabel * 4 < zxingPerLabel,
+                "Allocated per label: ZXing+ImageIO " + zxingPerLabel + " B, QrPngWriter " + directPerLabel + " B");
+    }
+}